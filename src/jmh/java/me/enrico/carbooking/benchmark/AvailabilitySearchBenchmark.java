@@ -0,0 +1,95 @@
+package me.enrico.carbooking.benchmark;
+
+import me.enrico.carbooking.dto.AvailableCarDTO;
+import me.enrico.carbooking.dto.CarDTO;
+import me.enrico.carbooking.model.BookingSlot;
+import me.enrico.carbooking.service.ActiveBookingTimeline;
+import me.enrico.carbooking.service.AvailabilityService;
+import me.enrico.carbooking.service.BookingTimelineIndex;
+import me.enrico.carbooking.service.CarOccupancyTracker;
+import me.enrico.carbooking.service.CarService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ricerca di {@link AvailabilityService} su tutta la flotta, con l'elenco delle auto già in cache.
+ * Ogni auto ha una prenotazione al giorno (8-17) per due anni; la finestra cercata, una sera a metà periodo, è libera
+ * per metà delle auto, le altre devono trovare il primo periodo libero scavalcando dieci giorni senza buchi
+ * (ricerca con {@code includeBusy}, il caso più costoso).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AvailabilitySearchBenchmark {
+
+    private static final LocalDateTime ORIGIN = LocalDateTime.of(2030, 1, 1, 0, 0);
+    private static final int DAYS = 2 * 365;
+    private static final int BACK_TO_BACK = 10;
+
+    @Param({"100", "1000", "5000"})
+    private int cars;
+
+    private AvailabilityService availabilityService;
+    private CarOccupancyTracker occupancyTracker;
+    private LocalDateTime from;
+    private LocalDateTime to;
+
+    @Setup
+    public void setUp() {
+        List<CarDTO> fleet = new ArrayList<>(cars);
+        BookingTimelineIndex timelineIndex = new BookingTimelineIndex(null);
+        long bookingId = 0;
+        int middle = DAYS / 2;
+        for (long carId = 0; carId < cars; carId++) {
+            fleet.add(CarDTO.builder().id(carId).name("Auto " + carId).seats(2 + (int) (carId % 6)).available(true).build());
+            for (int day = 0; day < DAYS; day++) {
+                LocalDateTime start = ORIGIN.plusDays(day).withHour(8);
+                timelineIndex.reserve(new BookingSlot(bookingId++, carId, start, start.withHour(17)));
+            }
+            if (carId % 2 == 1) {
+                // Occupa anche le notti dalla finestra cercata in poi: il primo periodo libero è dieci giorni più avanti
+                for (int day = middle; day < middle + BACK_TO_BACK; day++) {
+                    LocalDateTime night = ORIGIN.plusDays(day).withHour(17).plusMinutes(1);
+                    timelineIndex.reserve(new BookingSlot(bookingId++, carId, night, ORIGIN.plusDays(day + 1).withHour(7).withMinute(59)));
+                }
+            }
+        }
+        CarService carService = new CarService(null, null) {
+            @Override
+            public List<CarDTO> getAllCars() {
+                return fleet;
+            }
+        };
+        occupancyTracker = new CarOccupancyTracker(new ActiveBookingTimeline(null));
+        availabilityService = new AvailabilityService(carService, timelineIndex, occupancyTracker);
+        from = ORIGIN.plusDays(middle).withHour(18);
+        to = from.withHour(20);
+    }
+
+    @TearDown
+    public void tearDown() {
+        occupancyTracker.shutdown();
+    }
+
+    @Benchmark
+    public List<AvailableCarDTO> searchAllCars() {
+        return availabilityService.findAvailable(from, to, 0, true);
+    }
+
+    @Benchmark
+    public List<AvailableCarDTO> searchWithMinSeats() {
+        return availabilityService.findAvailable(from, to, 6, true);
+    }
+}
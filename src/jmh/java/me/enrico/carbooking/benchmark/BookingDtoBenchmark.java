@@ -0,0 +1,112 @@
+package me.enrico.carbooking.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import me.enrico.carbooking.dto.BookingDTO;
+import me.enrico.carbooking.dto.BookingView;
+import me.enrico.carbooking.dto.DtoMapper;
+import me.enrico.carbooking.model.Booking;
+import me.enrico.carbooking.model.Car;
+import me.enrico.carbooking.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo delle risposte JSON delle liste di prenotazioni: conversione in {@link BookingDTO} dalle entità
+ * ({@link DtoMapper}) o dalla proiezione {@link BookingView}, e serializzazione Jackson configurata come
+ * in Spring Boot. Eseguire con {@code -prof gc} per confrontare le allocazioni per elemento.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BookingDtoBenchmark {
+
+    private static final LocalDateTime ORIGIN = LocalDateTime.of(2030, 1, 1, 8, 0);
+
+    @Param({"100", "10000"})
+    private int bookings;
+
+    private List<Booking> entities;
+    private List<BookingView> views;
+    private List<BookingDTO> dtos;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setUp() {
+        List<Car> cars = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Car car = new Car("Auto " + i, 4 + i % 3);
+            car.setId((long) i);
+            cars.add(car);
+        }
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            User user = new User();
+            user.setId((long) i);
+            user.setUsername("utente" + i);
+            users.add(user);
+        }
+
+        entities = new ArrayList<>(bookings);
+        views = new ArrayList<>(bookings);
+        for (int i = 0; i < bookings; i++) {
+            Car car = cars.get(i % cars.size());
+            User user = users.get(i % users.size());
+            LocalDateTime start = ORIGIN.plusMinutes(37L * i);
+            Booking booking = new Booking();
+            booking.setId((long) i);
+            booking.setCar(car);
+            booking.setUser(user);
+            booking.setBookedAt(start.minusDays(1));
+            booking.setStartDateTime(start);
+            booking.setEndDateTime(start.plusHours(1 + i % 8));
+            booking.setDuration(1 + i % 8);
+            booking.setReason("Lavoro");
+            entities.add(booking);
+            views.add(new BookingView(booking.getId(), car.getId(), car.getName(), car.getSeats(), car.isAvailable(),
+                    user.getUsername(), booking.getBookedAt(), booking.getStartDateTime(), booking.getEndDateTime(),
+                    booking.getDuration(), booking.getReason(), booking.isActive()));
+        }
+        dtos = entities.stream().map(DtoMapper::toBookingDTO).toList();
+        // Stessa configurazione di base dell'ObjectMapper di Spring Boot (date ISO-8601, moduli java.time)
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+    }
+
+    @Benchmark
+    public List<BookingDTO> fromEntities() {
+        return entities.stream().map(DtoMapper::toBookingDTO).toList();
+    }
+
+    @Benchmark
+    public List<BookingDTO> fromViews() {
+        return views.stream().map(BookingView::toBookingDTO).toList();
+    }
+
+    @Benchmark
+    public byte[] serializeList() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(dtos);
+    }
+
+    /**
+     * Percorso completo di un endpoint che legge entità: conversione più serializzazione.
+     */
+    @Benchmark
+    public byte[] convertAndSerialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(fromEntities());
+    }
+}
@@ -0,0 +1,177 @@
+package me.enrico.carbooking.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latenza delle query calde di {@code BookingRepository} su H2 in modalità MySQL, con e senza gli indici
+ * dichiarati su {@code Booking}. Le query riproducono l'SQL generato da Hibernate; all'avvio viene stampato
+ * il piano di esecuzione (EXPLAIN) di ciascuna, per verificare quale indice viene usato.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class BookingIndexBenchmark {
+
+    private static final LocalDateTime ORIGIN = LocalDateTime.of(2020, 1, 1, 8, 0);
+    private static final int MINUTES_BETWEEN_BOOKINGS = 37;
+
+    private static final String BOOKING_VIEW = "SELECT b.id, c.id, c.name, c.seats, c.available, u.username, b.booked_at, " +
+            "b.start_date_time, b.end_date_time, b.duration, b.reason, b.active " +
+            "FROM booking b JOIN car c ON c.id = b.car_id JOIN users u ON u.id = b.user_id ";
+    private static final String OVERLAP = "SELECT COUNT(b.id) FROM booking b WHERE b.car_id = ? AND b.active = TRUE " +
+            "AND b.start_date_time <= ? AND b.end_date_time >= ?";
+    private static final String OCCUPIED = BOOKING_VIEW + "WHERE b.active = TRUE AND b.start_date_time <= ? AND b.end_date_time > ?";
+    private static final String FUTURE_PAGE = BOOKING_VIEW + "WHERE b.active = TRUE AND b.start_date_time > ? " +
+            "AND (b.start_date_time > ? OR (b.start_date_time = ? AND b.id > ?)) ORDER BY b.start_date_time, b.id LIMIT 51";
+    private static final String TIMELINE = BOOKING_VIEW + "WHERE b.active = TRUE AND b.end_date_time > ?";
+    private static final String REMINDERS = "SELECT b.id FROM booking b WHERE b.active = TRUE AND b.reminder_sent = FALSE " +
+            "AND b.start_date_time BETWEEN ? AND ? AND b.id > ? ORDER BY b.id LIMIT 100";
+
+    @Param({"1000000"})
+    private int bookings;
+
+    @Param({"false", "true"})
+    private boolean indexed;
+
+    private Connection connection;
+    private LocalDateTime now;
+
+    @Setup
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:booking_indexes_" + indexed + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE car (id BIGINT PRIMARY KEY, name VARCHAR(255), seats INT, available BOOLEAN)");
+            statement.execute("CREATE TABLE users (id BIGINT PRIMARY KEY, username VARCHAR(255))");
+            statement.execute("CREATE TABLE booking (id BIGINT PRIMARY KEY, car_id BIGINT NOT NULL, user_id BIGINT NOT NULL, " +
+                    "booked_at TIMESTAMP, start_date_time TIMESTAMP, end_date_time TIMESTAMP, duration INT, reason VARCHAR(255), " +
+                    "active BOOLEAN, reminder_sent BOOLEAN)");
+            statement.execute("INSERT INTO car SELECT X, CONCAT('Auto ', X), 4, TRUE FROM SYSTEM_RANGE(0, 49)");
+            statement.execute("INSERT INTO users SELECT X, CONCAT('utente', X) FROM SYSTEM_RANGE(0, 199)");
+            // Una prenotazione ogni 37 minuti (circa 70 anni con 1M righe), su 50 auto; una su dieci annullata
+            statement.execute("INSERT INTO booking SELECT X, MOD(X, 50), MOD(X, 200), " +
+                    "DATEADD(MINUTE, X * " + MINUTES_BETWEEN_BOOKINGS + " - 1440, TIMESTAMP '2020-01-01 08:00:00'), " +
+                    "DATEADD(MINUTE, X * " + MINUTES_BETWEEN_BOOKINGS + ", TIMESTAMP '2020-01-01 08:00:00'), " +
+                    "DATEADD(MINUTE, X * " + MINUTES_BETWEEN_BOOKINGS + " + 60 * (1 + MOD(X, 8)), TIMESTAMP '2020-01-01 08:00:00'), " +
+                    "1 + MOD(X, 8), 'Lavoro', MOD(X, 10) <> 0, FALSE FROM SYSTEM_RANGE(1, " + bookings + ")");
+            // Il 90% delle prenotazioni è nel passato e ha già ricevuto il promemoria
+            now = ORIGIN.plusMinutes((long) MINUTES_BETWEEN_BOOKINGS * bookings * 9 / 10);
+            statement.execute("UPDATE booking SET reminder_sent = TRUE WHERE start_date_time < TIMESTAMP '" + Timestamp.valueOf(now) + "'");
+            if (indexed) {
+                // Stessi indici di @Table su Booking
+                statement.execute("CREATE INDEX idx_booking_car_active_period ON booking (car_id, active, start_date_time, end_date_time)");
+                statement.execute("CREATE INDEX idx_booking_active_start ON booking (active, start_date_time, id)");
+                statement.execute("CREATE INDEX idx_booking_active_end ON booking (active, end_date_time)");
+                statement.execute("CREATE INDEX idx_booking_reminder ON booking (active, reminder_sent, start_date_time)");
+            }
+            statement.execute("ANALYZE");
+        }
+        printPlans();
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public int overlapCheck() throws SQLException {
+        try (PreparedStatement query = connection.prepareStatement(OVERLAP)) {
+            query.setLong(1, 7);
+            query.setTimestamp(2, Timestamp.valueOf(now.plusHours(3)));
+            query.setTimestamp(3, Timestamp.valueOf(now.plusHours(1)));
+            return count(query);
+        }
+    }
+
+    @Benchmark
+    public int occupiedNow() throws SQLException {
+        try (PreparedStatement query = connection.prepareStatement(OCCUPIED)) {
+            query.setTimestamp(1, Timestamp.valueOf(now));
+            query.setTimestamp(2, Timestamp.valueOf(now));
+            return count(query);
+        }
+    }
+
+    @Benchmark
+    public int futureFirstPage() throws SQLException {
+        try (PreparedStatement query = connection.prepareStatement(FUTURE_PAGE)) {
+            query.setTimestamp(1, Timestamp.valueOf(now));
+            query.setTimestamp(2, Timestamp.valueOf(now));
+            query.setTimestamp(3, Timestamp.valueOf(now));
+            query.setLong(4, 0);
+            return count(query);
+        }
+    }
+
+    @Benchmark
+    public int timelineWarmUp() throws SQLException {
+        try (PreparedStatement query = connection.prepareStatement(TIMELINE)) {
+            query.setTimestamp(1, Timestamp.valueOf(now));
+            return count(query);
+        }
+    }
+
+    @Benchmark
+    public int reminderCandidates() throws SQLException {
+        try (PreparedStatement query = connection.prepareStatement(REMINDERS)) {
+            query.setTimestamp(1, Timestamp.valueOf(now));
+            query.setTimestamp(2, Timestamp.valueOf(now.plusHours(24)));
+            query.setLong(3, 0);
+            return count(query);
+        }
+    }
+
+    private void printPlans() throws SQLException {
+        String[][] queries = {
+                {"overlapCheck", OVERLAP.replaceFirst("\\?", "7")},
+                {"occupiedNow", OCCUPIED},
+                {"futureFirstPage", FUTURE_PAGE},
+                {"timelineWarmUp", TIMELINE},
+                {"reminderCandidates", REMINDERS}
+        };
+        String at = "TIMESTAMP '" + Timestamp.valueOf(now) + "'";
+        for (String[] query : queries) {
+            String sql = query[1].replaceAll("b\\.id > \\?", "b.id > 0").replace("?", at);
+            try (Statement statement = connection.createStatement();
+                 ResultSet plan = statement.executeQuery("EXPLAIN " + sql)) {
+                plan.next();
+                System.out.printf("%n[indexed=%s] %s:%n%s%n", indexed, query[0], plan.getString(1));
+            }
+        }
+    }
+
+    private static int count(PreparedStatement query) throws SQLException {
+        int rows = 0;
+        try (ResultSet resultSet = query.executeQuery()) {
+            while (resultSet.next()) {
+                rows++;
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,137 @@
+package me.enrico.carbooking.benchmark;
+
+import me.enrico.carbooking.CarbookingApplication;
+import me.enrico.carbooking.model.Car;
+import me.enrico.carbooking.model.Role;
+import me.enrico.carbooking.model.User;
+import me.enrico.carbooking.repositories.CarRepository;
+import me.enrico.carbooking.repositories.UserRepository;
+import me.enrico.carbooking.request.CarBookingRequest;
+import me.enrico.carbooking.service.BookingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stress test del percorso check-then-insert: molti thread tentano prenotazioni sovrapposte sulle stesse auto
+ * chiamando {@link BookingService#createBooking} nell'applicazione completa su H2 (modalità MySQL), quindi con
+ * transazioni, lock sulla riga dell'auto e controllo sul database reali.
+ * Il punteggio è la throughput dei tentativi; al termine di ogni iterazione una query sulle righe salvate verifica
+ * che non esistano prenotazioni attive sovrapposte. Ogni iterazione usa un periodo diverso, così parte da un calendario vuoto.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(16)
+public class ConcurrentBookingBenchmark {
+
+    private static final LocalDateTime ORIGIN = LocalDateTime.of(2030, 1, 1, 0, 0);
+    private static final int SLOT_RANGE_HOURS = 24 * 30;
+
+    // Coppie di prenotazioni attive della stessa auto che si sovrappongono (gli estremi che si toccano contano)
+    private static final String OVERLAPS = "SELECT COUNT(*) FROM booking a JOIN booking b ON a.car_id = b.car_id AND a.id < b.id "
+            + "WHERE a.active AND b.active AND a.start_date_time <= b.end_date_time AND a.end_date_time >= b.start_date_time";
+
+    @Param({"1", "8", "64"})
+    private int cars;
+
+    private ConfigurableApplicationContext context;
+    private BookingService bookingService;
+    private JdbcTemplate jdbcTemplate;
+    private List<Car> fleet;
+    private User user;
+    private int iteration;
+    private volatile LocalDateTime windowStart;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        // Argomenti da riga di comando: prevalgono su application.properties, che legge database e SMTP dall'ambiente
+        context = new SpringApplicationBuilder(CarbookingApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.datasource.url=jdbc:h2:mem:concurrent-booking;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.hikari.maximum-pool-size=16",
+                        "--spring.jpa.hibernate.ddl-auto=create",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--spring.mail.host=localhost",
+                        "--spring.mail.port=3025",
+                        "--spring.mail.username=benchmark",
+                        "--spring.mail.password=benchmark",
+                        "--spring.mail.properties.mail.smtp.auth=false",
+                        "--spring.mail.properties.mail.smtp.starttls.enable=false",
+                        "--spring.mail.properties.mail.smtp.starttls.required=false",
+                        "--spring.mail.properties.mail.smtp.ssl.trust=*",
+                        "--spring.mail.properties.mail.smtp.localhost=localhost",
+                        // Le email restano nella outbox: l'invio non fa parte della misura
+                        "--mail.outbox.poll-interval=3600000",
+                        "--reminder.service.cron=-",
+                        "--logging.level.root=WARN");
+        bookingService = context.getBean(BookingService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        CarRepository carRepository = context.getBean(CarRepository.class);
+        fleet = new ArrayList<>(cars);
+        for (int i = 0; i < cars; i++) {
+            fleet.add(carRepository.save(new Car("Stress " + i, 4)));
+        }
+        user = context.getBean(UserRepository.class).save(new User("stress", "stress@carbooking.local", "{noop}stress",
+                "Stress", "Test", Set.of(Role.ROLE_USER)));
+    }
+
+    @Setup(Level.Iteration)
+    public void nextWindow() {
+        windowStart = ORIGIN.plusDays(60L * iteration++);
+    }
+
+    @Benchmark
+    public boolean book() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Car car = fleet.get(random.nextInt(fleet.size()));
+        LocalDateTime start = windowStart.plusHours(random.nextInt(SLOT_RANGE_HOURS));
+        CarBookingRequest request = new CarBookingRequest();
+        request.setStartDateTime(start);
+        request.setEndDateTime(start.plusHours(1 + random.nextInt(4)));
+        request.setReason("Stress");
+        try {
+            bookingService.createBooking(car, request, user);
+            return true;
+        } catch (IllegalStateException e) {
+            return false; // Periodo già occupato
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void assertNoOverlaps() {
+        Long overlaps = jdbcTemplate.queryForObject(OVERLAPS, Long.class);
+        if (overlaps == null || overlaps != 0) {
+            throw new IllegalStateException("Prenotazioni attive sovrapposte nel database: " + overlaps);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+}
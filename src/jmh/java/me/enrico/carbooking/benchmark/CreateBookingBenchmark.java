@@ -0,0 +1,191 @@
+package me.enrico.carbooking.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import me.enrico.carbooking.model.Booking;
+import me.enrico.carbooking.model.BookingSlot;
+import me.enrico.carbooking.model.Car;
+import me.enrico.carbooking.model.User;
+import me.enrico.carbooking.repositories.BookingRepository;
+import me.enrico.carbooking.repositories.CarRepository;
+import me.enrico.carbooking.repositories.UserRepository;
+import me.enrico.carbooking.request.CarBookingRequest;
+import me.enrico.carbooking.service.BookingLocks;
+import me.enrico.carbooking.service.BookingService;
+import me.enrico.carbooking.service.BookingTimelineIndex;
+import me.enrico.carbooking.service.EmailService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Percorso di {@link BookingService#createBooking} senza database: validazione, lock per auto, transazione
+ * (gestore senza risorse), controllo delle sovrapposizioni sull'indice e creazione dell'entità.
+ * I repository sono proxy che rispondono subito e l'email non viene accodata, così il punteggio misura solo
+ * il lavoro dell'applicazione. L'auto ha già {@code bookingsPerCar} prenotazioni di un'ora, una ogni due ore.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CreateBookingBenchmark {
+
+    private static final Long CAR_ID = 1L;
+
+    @Param({"1000", "100000"})
+    private int bookingsPerCar;
+
+    private BookingService bookingService;
+    private Car car;
+    private User user;
+    private Booking existing;
+    private LocalDateTime origin;
+    private LocalDateTime nextFreeStart;
+    private CarBookingRequest overlapping;
+    private CarBookingRequest invalid;
+
+    // Ripristinato a ogni iterazione: le prenotazioni accettate allungano la linea temporale dell'auto
+    @Setup(Level.Iteration)
+    public void setUp() {
+        origin = LocalDateTime.now().plusDays(1).withMinute(0).withSecond(0).withNano(0);
+        car = new Car("Auto 1", 4);
+        car.setId(CAR_ID);
+        user = new User();
+        user.setId(1L);
+        user.setUsername("utente1");
+
+        BookingTimelineIndex timelineIndex = new BookingTimelineIndex(null);
+        for (int i = 0; i < bookingsPerCar; i++) {
+            LocalDateTime start = origin.plusHours(2L * i);
+            timelineIndex.reserve(new BookingSlot((long) i, CAR_ID, start, start.plusHours(1)));
+        }
+        nextFreeStart = origin.plusHours(2L * bookingsPerCar);
+        bookingService = new BookingService(bookingRepository(bookingsPerCar), new EmailService() {
+            @Override
+            public void enqueueBookingConfirmationEmail(Booking booking) {
+                // La outbox è una scrittura sul database: fuori dalla misura
+            }
+        }, timelineIndex, carRepository(car), userRepository(user), new BookingLocks(),
+                new TransactionTemplate(new NoOpTransactionManager()), event -> {
+        }, new SimpleMeterRegistry());
+
+        existing = new Booking();
+        existing.setStartDateTime(origin.plusHours(2L * (bookingsPerCar / 2)));
+        existing.setEndDateTime(existing.getStartDateTime().plusHours(1));
+        overlapping = request(existing.getStartDateTime().plusMinutes(30), existing.getEndDateTime().plusMinutes(30));
+        invalid = request(origin.plusHours(3), origin.plusHours(2));
+    }
+
+    /**
+     * Prenotazione accettata, ogni volta in un periodo libero dopo l'ultima.
+     */
+    @Benchmark
+    public Booking createAccepted() {
+        LocalDateTime start = nextFreeStart;
+        nextFreeStart = start.plusHours(2);
+        return bookingService.createBooking(car, request(start, start.plusHours(1)), user);
+    }
+
+    @Benchmark
+    public String createRejectedOverlap() {
+        try {
+            bookingService.createBooking(car, overlapping, user);
+            throw new IllegalStateException("La sovrapposizione non è stata rilevata");
+        } catch (IllegalStateException e) {
+            return e.getMessage();
+        }
+    }
+
+    @Benchmark
+    public String createRejectedValidation() {
+        try {
+            bookingService.createBooking(car, invalid, user);
+            throw new IllegalStateException("La richiesta non valida è stata accettata");
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+
+    @Benchmark
+    public boolean bookingOverlaps() {
+        return existing.overlaps(overlapping.getStartDateTime(), overlapping.getEndDateTime());
+    }
+
+    private static CarBookingRequest request(LocalDateTime start, LocalDateTime end) {
+        CarBookingRequest request = new CarBookingRequest();
+        request.setStartDateTime(start);
+        request.setEndDateTime(end);
+        request.setReason("Lavoro");
+        return request;
+    }
+
+    private static BookingRepository bookingRepository(int firstId) {
+        AtomicLong ids = new AtomicLong(firstId);
+        return (BookingRepository) Proxy.newProxyInstance(BookingRepository.class.getClassLoader(),
+                new Class<?>[]{BookingRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "save" -> {
+                        Booking booking = (Booking) args[0];
+                        booking.setId(ids.getAndIncrement());
+                        yield booking;
+                    }
+                    case "existsActiveOverlapping" -> false;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static CarRepository carRepository(Car car) {
+        return (CarRepository) Proxy.newProxyInstance(CarRepository.class.getClassLoader(),
+                new Class<?>[]{CarRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findByIdForUpdate" -> Optional.of(car);
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static UserRepository userRepository(User user) {
+        return (UserRepository) Proxy.newProxyInstance(UserRepository.class.getClassLoader(),
+                new Class<?>[]{UserRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getReferenceById" -> user;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * Gestore di transazioni senza risorse: esegue comunque le sincronizzazioni (reserve/rollback dell'indice).
+     */
+    private static class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
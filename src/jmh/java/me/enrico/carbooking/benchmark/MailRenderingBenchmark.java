@@ -0,0 +1,70 @@
+package me.enrico.carbooking.benchmark;
+
+import me.enrico.carbooking.service.MailModel;
+import me.enrico.carbooking.service.MailTemplateRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Email di conferma generate al secondo: Thymeleaf a ogni messaggio (come faceva {@code EmailService})
+ * contro i template precompilati di {@link MailTemplateRenderer}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MailRenderingBenchmark {
+
+    private static final LocalDateTime START = LocalDateTime.of(2030, 5, 12, 9, 30);
+
+    private SpringTemplateEngine templateEngine;
+    private MailTemplateRenderer renderer;
+
+    @Setup
+    public void setUp() throws IOException {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode(TemplateMode.HTML);
+        resolver.setCharacterEncoding("UTF-8");
+        templateEngine = new SpringTemplateEngine();
+        templateEngine.setTemplateResolver(resolver);
+        renderer = new MailTemplateRenderer(templateEngine);
+        renderer.compile();
+    }
+
+    @Benchmark
+    public String thymeleafPerMessage() {
+        Map<String, Object> model = new HashMap<>();
+        model.put("subject", "Conferma Prenotazione Auto");
+        model.put("userName", "Enrico");
+        model.put("bookingId", 42L);
+        model.put("carName", "Mini Nera");
+        model.put("startTime", START);
+        model.put("endTime", START.plusHours(2));
+        model.put("reason", "Lavoro & commissioni");
+        Context context = new Context();
+        context.setVariables(model);
+        return templateEngine.process("mail/booking-confirmation.html", context);
+    }
+
+    @Benchmark
+    public String precompiledTemplate() {
+        return renderer.render("booking-confirmation.html", new MailModel("Conferma Prenotazione Auto", "Enrico",
+                "Mini Nera", START, START.plusHours(2), "Lavoro & commissioni", null, null, null));
+    }
+}
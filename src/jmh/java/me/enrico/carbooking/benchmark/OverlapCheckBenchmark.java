@@ -0,0 +1,85 @@
+package me.enrico.carbooking.benchmark;
+
+import me.enrico.carbooking.model.Booking;
+import me.enrico.carbooking.model.BookingSlot;
+import me.enrico.carbooking.service.CarTimeline;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Confronta la scansione lineare di {@code BookingService} (prima dell'indice) con {@link CarTimeline}.
+ * Ogni auto ha prenotazioni di un'ora separate da un'ora libera; la richiesta cade in un buco libero a metà
+ * storico, il caso peggiore per la scansione perché deve controllare ogni prenotazione.
+ * Con {@code withLongBooking} l'auto ha anche una prenotazione di quattro settimane prima delle altre: il costo
+ * dell'indice non deve cambiare.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OverlapCheckBenchmark {
+
+    private static final LocalDateTime ORIGIN = LocalDateTime.of(2020, 1, 1, 0, 0);
+
+    @Param({"10000", "100000", "1000000"})
+    private int bookingsPerCar;
+
+    @Param({"false", "true"})
+    private boolean withLongBooking;
+
+    private List<Booking> activeBookings;
+    private CarTimeline timeline;
+    private LocalDateTime requestStart;
+    private LocalDateTime requestEnd;
+
+    @Setup
+    public void setUp() {
+        activeBookings = new ArrayList<>(bookingsPerCar);
+        timeline = new CarTimeline();
+        for (int i = 0; i < bookingsPerCar; i++) {
+            LocalDateTime start = ORIGIN.plusHours(2L * i);
+            Booking booking = new Booking();
+            booking.setId((long) i);
+            booking.setStartDateTime(start);
+            booking.setEndDateTime(start.plusHours(1));
+            activeBookings.add(booking);
+            timeline.add(new BookingSlot((long) i, 1L, start, start.plusHours(1)));
+        }
+        if (withLongBooking) {
+            Booking booking = new Booking();
+            booking.setId(-1L);
+            booking.setStartDateTime(ORIGIN.minusWeeks(5));
+            booking.setEndDateTime(ORIGIN.minusWeeks(1));
+            activeBookings.add(booking);
+            timeline.add(new BookingSlot(-1L, 1L, booking.getStartDateTime(), booking.getEndDateTime()));
+        }
+        LocalDateTime gap = ORIGIN.plusHours(bookingsPerCar).plusHours(1);
+        requestStart = gap.plusMinutes(10);
+        requestEnd = gap.plusMinutes(50);
+    }
+
+    @Benchmark
+    public boolean linearScan() {
+        for (Booking booking : activeBookings) {
+            if (booking.overlaps(requestStart, requestEnd)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Benchmark
+    public boolean timelineIndex() {
+        return timeline.findConflict(requestStart, requestEnd).isPresent();
+    }
+}
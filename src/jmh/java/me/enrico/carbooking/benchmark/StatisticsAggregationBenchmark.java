@@ -0,0 +1,190 @@
+package me.enrico.carbooking.benchmark;
+
+import me.enrico.carbooking.dto.GroupTotals;
+import me.enrico.carbooking.dto.MonthlyCount;
+import me.enrico.carbooking.dto.OverallTotals;
+import me.enrico.carbooking.dto.StatisticsDTO;
+import me.enrico.carbooking.dto.UserCarCount;
+import me.enrico.carbooking.model.Booking;
+import me.enrico.carbooking.model.Car;
+import me.enrico.carbooking.model.User;
+import me.enrico.carbooking.repositories.BookingRepository;
+import me.enrico.carbooking.service.StatisticsService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Confronta i due percorsi di {@link StatisticsService} su H2 in modalità MySQL:
+ * la scansione completa (tutte le righe idratate come entità, poi {@code Collectors.groupingBy})
+ * e le query di aggregazione con GROUP BY. Eseguire con {@code -prof gc} per confrontare le allocazioni.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class StatisticsAggregationBenchmark {
+
+    private static final String[] REASONS = {"Lavoro", "Spesa", "Scuola", "Viaggio", "Sport"};
+
+    @Param({"1000000"})
+    private int bookings;
+
+    private Connection connection;
+    private StatisticsService fullScanService;
+    private StatisticsService sqlService;
+
+    @Setup
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:statistics;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE car (id BIGINT PRIMARY KEY, name VARCHAR(255), seats INT)");
+            statement.execute("CREATE TABLE users (id BIGINT PRIMARY KEY, username VARCHAR(255))");
+            statement.execute("CREATE TABLE booking (id BIGINT PRIMARY KEY, car_id BIGINT, user_id BIGINT, " +
+                    "start_date_time TIMESTAMP, end_date_time TIMESTAMP, duration INT, reason VARCHAR(255), active BOOLEAN)");
+            for (int car = 0; car < 10; car++) {
+                statement.execute("INSERT INTO car VALUES (" + car + ", 'Auto " + car + "', 4)");
+            }
+            for (int user = 0; user < 50; user++) {
+                statement.execute("INSERT INTO users VALUES (" + user + ", 'utente" + user + "')");
+            }
+        }
+        LocalDateTime origin = LocalDateTime.of(2020, 1, 1, 8, 0);
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO booking VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < bookings; i++) {
+                LocalDateTime start = origin.plusMinutes(37L * i);
+                int duration = 1 + i % 8;
+                insert.setLong(1, i);
+                insert.setLong(2, i % 10);
+                insert.setLong(3, i % 50);
+                insert.setTimestamp(4, Timestamp.valueOf(start));
+                insert.setTimestamp(5, Timestamp.valueOf(start.plusHours(duration)));
+                insert.setInt(6, duration);
+                insert.setString(7, REASONS[i % REASONS.length]);
+                insert.setBoolean(8, i % 3 != 0);
+                insert.addBatch();
+                if (i % 10_000 == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        fullScanService = new StatisticsService(repository());
+        sqlService = new StatisticsService(repository());
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public StatisticsDTO fullScanGroupingBy() {
+        return fullScanService.computeFullScanStatistics();
+    }
+
+    @Benchmark
+    public StatisticsDTO sqlAggregation() {
+        return sqlService.computeSqlAggregatedStatistics();
+    }
+
+    /**
+     * Repository minimale su JDBC: {@code findAll} idrata le entità come farebbe Hibernate,
+     * le query di aggregazione eseguono l'SQL equivalente alle query JPQL.
+     */
+    private BookingRepository repository() {
+        return (BookingRepository) Proxy.newProxyInstance(BookingRepository.class.getClassLoader(),
+                new Class<?>[]{BookingRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findAll" -> loadAllBookings();
+                    case "sumByCar" -> query("SELECT c.name, COUNT(*), SUM(b.duration) FROM booking b " +
+                                    "JOIN car c ON b.car_id = c.id GROUP BY c.name",
+                            rs -> new GroupTotals(rs.getString(1), rs.getLong(2), rs.getLong(3)));
+                    case "sumByUser" -> query("SELECT u.username, COUNT(*), SUM(b.duration) FROM booking b " +
+                                    "JOIN users u ON b.user_id = u.id GROUP BY u.username",
+                            rs -> new GroupTotals(rs.getString(1), rs.getLong(2), rs.getLong(3)));
+                    case "countByUserAndCar" -> query("SELECT u.username, c.name, COUNT(*) FROM booking b " +
+                                    "JOIN users u ON b.user_id = u.id JOIN car c ON b.car_id = c.id GROUP BY u.username, c.name",
+                            rs -> new UserCarCount(rs.getString(1), rs.getString(2), rs.getLong(3)));
+                    case "sumByReason" -> query("SELECT reason, COUNT(*), SUM(duration) FROM booking " +
+                                    "WHERE reason IS NOT NULL GROUP BY reason",
+                            rs -> new GroupTotals(rs.getString(1), rs.getLong(2), rs.getLong(3)));
+                    case "countByMonth" -> query("SELECT YEAR(start_date_time), MONTH(start_date_time), COUNT(*) FROM booking " +
+                                    "WHERE start_date_time IS NOT NULL GROUP BY YEAR(start_date_time), MONTH(start_date_time)",
+                            rs -> new MonthlyCount(rs.getInt(1), rs.getInt(2), rs.getLong(3)));
+                    case "overallTotals" -> query("SELECT COUNT(*), AVG(CAST(duration AS DOUBLE)) FROM booking",
+                            rs -> new OverallTotals(rs.getLong(1), rs.getDouble(2))).get(0);
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private List<Booking> loadAllBookings() throws SQLException {
+        Map<Long, Car> cars = new HashMap<>();
+        Map<Long, User> users = new HashMap<>();
+        return query("SELECT b.id, b.car_id, c.name, c.seats, b.user_id, u.username, b.start_date_time, b.end_date_time, " +
+                "b.duration, b.reason, b.active FROM booking b JOIN car c ON b.car_id = c.id JOIN users u ON b.user_id = u.id", rs -> {
+            Car car = cars.get(rs.getLong(2));
+            if (car == null) {
+                car = new Car(rs.getString(3), rs.getInt(4));
+                car.setId(rs.getLong(2));
+                cars.put(car.getId(), car);
+            }
+            User user = users.get(rs.getLong(5));
+            if (user == null) {
+                user = new User();
+                user.setId(rs.getLong(5));
+                user.setUsername(rs.getString(6));
+                users.put(user.getId(), user);
+            }
+            Booking booking = new Booking();
+            booking.setId(rs.getLong(1));
+            booking.setCar(car);
+            booking.setUser(user);
+            booking.setStartDateTime(rs.getTimestamp(7).toLocalDateTime());
+            booking.setEndDateTime(rs.getTimestamp(8).toLocalDateTime());
+            booking.setDuration(rs.getInt(9));
+            booking.setReason(rs.getString(10));
+            booking.setActive(rs.getBoolean(11));
+            return booking;
+        });
+    }
+
+    private <T> List<T> query(String sql, RowMapper<T> mapper) throws SQLException {
+        List<T> result = new ArrayList<>();
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            while (rs.next()) {
+                result.add(mapper.map(rs));
+            }
+        }
+        return result;
+    }
+
+    @FunctionalInterface
+    private interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+}
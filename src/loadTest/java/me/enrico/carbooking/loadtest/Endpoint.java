@@ -0,0 +1,56 @@
+package me.enrico.carbooking.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Operazioni del mix di carico, con il peso relativo con cui ogni utente virtuale le sceglie: nel mix completo
+ * e nel mix "dashboard", che riproduce solo le letture della home aperta in molti browser.
+ * Prenotazione, terminazione e annullamento sono una sequenza: {@link #BOOK} è seguito da una delle altre due.
+ */
+public enum Endpoint {
+
+    LOGIN("login", 2, 0),
+    CARS("cars", 30, 40),
+    OCCUPIED("occupied", 15, 25),
+    FUTURE("future", 15, 25),
+    AVAILABLE("available", 10, 0),
+    BOOK("book", 15, 0),
+    TERMINATE("terminate", 0, 0),
+    CANCEL("cancel", 0, 0),
+    STATISTICS("statistics", 13, 10);
+
+    private static final int TOTAL_WEIGHT = Arrays.stream(values()).mapToInt(Endpoint::weight).sum();
+    private static final int TOTAL_DASHBOARD_WEIGHT = Arrays.stream(values()).mapToInt(endpoint -> endpoint.dashboardWeight).sum();
+
+    private final String key;
+    private final int weight;
+    private final int dashboardWeight;
+
+    Endpoint(String key, int weight, int dashboardWeight) {
+        this.key = key;
+        this.weight = weight;
+        this.dashboardWeight = dashboardWeight;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    public int weight() {
+        return weight;
+    }
+
+    /**
+     * Sceglie un'operazione in proporzione ai pesi; {@code roll} è uniforme in [0, 1).
+     */
+    public static Endpoint pick(double roll, boolean dashboardOnly) {
+        int target = (int) (roll * (dashboardOnly ? TOTAL_DASHBOARD_WEIGHT : TOTAL_WEIGHT));
+        for (Endpoint endpoint : values()) {
+            target -= dashboardOnly ? endpoint.dashboardWeight : endpoint.weight;
+            if (target < 0) {
+                return endpoint;
+            }
+        }
+        return CARS;
+    }
+}
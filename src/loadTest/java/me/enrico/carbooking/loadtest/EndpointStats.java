@@ -0,0 +1,50 @@
+package me.enrico.carbooking.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latenze (in microsecondi) ed esiti di un endpoint. Il {@link Recorder} accetta registrazioni concorrenti
+ * senza lock; {@link #interval()} restituisce quanto registrato dalla chiamata precedente, così il
+ * riscaldamento si scarta senza fermare il carico.
+ */
+public class EndpointStats {
+
+    private final Endpoint endpoint;
+    private final Recorder recorder = new Recorder(3);
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public EndpointStats(Endpoint endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public Endpoint endpoint() {
+        return endpoint;
+    }
+
+    public void record(long elapsedNanos) {
+        recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+    }
+
+    public void error() {
+        errors.incrementAndGet();
+    }
+
+    /**
+     * Richiesta respinta per una regola applicativa (es. periodo già prenotato): non conta come errore.
+     */
+    public void rejected() {
+        rejected.incrementAndGet();
+    }
+
+    public Interval interval() {
+        return new Interval(recorder.getIntervalHistogram(), errors.getAndSet(0), rejected.getAndSet(0));
+    }
+
+    public record Interval(Histogram histogram, long errors, long rejected) {
+    }
+}
@@ -0,0 +1,72 @@
+package me.enrico.carbooking.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Parametri del test di carico, letti dalle proprietà di sistema {@code loadtest.*}.
+ * Gli SLO partono da {@code loadtest-slo.properties} e si sovrascrivono con {@code loadtest.slo.*}.
+ * {@code loadtest.mix=dashboard} limita il carico alle letture della home; {@code loadtest.virtual-threads}
+ * avvia l'applicazione con o senza virtual thread, per confrontare le due modalità a parità di carico.
+ * {@code loadtest.replicas=true} manda le letture read-only su una replica embedded, con ritardo simulato
+ * di {@code loadtest.replica-lag} secondi (oltre il massimo di 5 s le letture tornano sul primario).
+ */
+public record LoadTestConfig(int cars, int users, int bookings, int concurrency, Duration warmUp, Duration duration,
+                             boolean dashboardOnly, boolean virtualThreads, boolean replicas, int replicaLagSeconds,
+                             int smtpPort, Path reportDir,
+                             Map<Endpoint, Double> p99LimitsMillis, double maxErrorRate) {
+
+    private static final String PREFIX = "loadtest.";
+    private static final String SLO_PREFIX = PREFIX + "slo.";
+
+    public static LoadTestConfig fromSystemProperties() {
+        Properties slo = loadSlo();
+        System.getProperties().stringPropertyNames().stream()
+                .filter(name -> name.startsWith(SLO_PREFIX))
+                .forEach(name -> slo.setProperty(name.substring(SLO_PREFIX.length()), System.getProperty(name)));
+
+        Map<Endpoint, Double> p99Limits = new HashMap<>();
+        for (Endpoint endpoint : Endpoint.values()) {
+            String limit = slo.getProperty("p99." + endpoint.key());
+            if (limit != null) {
+                p99Limits.put(endpoint, Double.parseDouble(limit));
+            }
+        }
+
+        return new LoadTestConfig(
+                Integer.getInteger(PREFIX + "cars", 50),
+                Integer.getInteger(PREFIX + "users", 200),
+                Integer.getInteger(PREFIX + "bookings", 20_000),
+                Integer.getInteger(PREFIX + "concurrency", 32),
+                DurationStyle.detectAndParse(System.getProperty(PREFIX + "warm-up", "15s")),
+                DurationStyle.detectAndParse(System.getProperty(PREFIX + "duration", "60s")),
+                "dashboard".equalsIgnoreCase(System.getProperty(PREFIX + "mix", "full")),
+                Boolean.getBoolean(PREFIX + "virtual-threads"),
+                Boolean.getBoolean(PREFIX + "replicas"),
+                Integer.getInteger(PREFIX + "replica-lag", 0),
+                Integer.getInteger(PREFIX + "smtp-port", 3025),
+                Path.of(System.getProperty(PREFIX + "report-dir", "build/loadtest")),
+                p99Limits,
+                Double.parseDouble(slo.getProperty("max-error-rate", "0.001")));
+    }
+
+    private static Properties loadSlo() {
+        Properties properties = new Properties();
+        try (InputStream in = LoadTestConfig.class.getResourceAsStream("/loadtest-slo.properties")) {
+            if (in != null) {
+                properties.load(in);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,103 @@
+package me.enrico.carbooking.loadtest;
+
+import me.enrico.carbooking.model.Booking;
+import me.enrico.carbooking.model.Car;
+import me.enrico.carbooking.model.Role;
+import me.enrico.carbooking.model.User;
+import me.enrico.carbooking.repositories.BookingRepository;
+import me.enrico.carbooking.repositories.CarRepository;
+import me.enrico.carbooking.repositories.UserRepository;
+import me.enrico.carbooking.service.ActiveBookingTimeline;
+import me.enrico.carbooking.service.BookingTimelineIndex;
+import me.enrico.carbooking.service.CarOccupancyTracker;
+import me.enrico.carbooking.service.StatisticsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Popola il database come {@code DataLoader}, ma con N auto, utenti e prenotazioni sintetiche.
+ * Le prenotazioni di ogni auto sono consecutive e non sovrapposte: quelle già concluse sono inattive,
+ * le altre attive. Scrivendo direttamente con i repository non passano dagli eventi, quindi alla fine
+ * le strutture in memoria caricate all'avvio vengono ricostruite.
+ */
+public class LoadTestDataGenerator {
+
+    public static final String PASSWORD = "loadtest";
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTestDataGenerator.class);
+    private static final ZoneId ROME_ZONE = ZoneId.of("Europe/Rome");
+    private static final String[] REASONS = {"Lavoro", "Spesa", "Scuola", "Viaggio", "Sport"};
+    private static final int CHUNK_SIZE = 1000;
+
+    private final ApplicationContext context;
+
+    public LoadTestDataGenerator(ApplicationContext context) {
+        this.context = context;
+    }
+
+    public LoadTestData generate(LoadTestConfig config) {
+        CarRepository carRepository = context.getBean(CarRepository.class);
+        UserRepository userRepository = context.getBean(UserRepository.class);
+        BookingRepository bookingRepository = context.getBean(BookingRepository.class);
+
+        List<Car> cars = new ArrayList<>(config.cars());
+        for (int i = 0; i < config.cars(); i++) {
+            cars.add(new Car("Auto di carico " + i, 2 + i % 6));
+        }
+        cars = carRepository.saveAll(cars);
+
+        // BCrypt è lento di proposito: un solo hash condiviso da tutti gli utenti
+        String passwordHash = context.getBean(PasswordEncoder.class).encode(PASSWORD);
+        List<User> users = new ArrayList<>(config.users());
+        for (int i = 0; i < config.users(); i++) {
+            users.add(new User("carico" + i, "carico" + i + "@carbooking.local", passwordHash,
+                    "Carico", String.valueOf(i), Set.of(Role.ROLE_USER)));
+        }
+        users = userRepository.saveAll(users);
+
+        // Metà delle prenotazioni nel passato e metà nel futuro: una ogni tre ore per auto, di due ore ciascuna
+        LocalDateTime now = LocalDateTime.now(ROME_ZONE);
+        int perCar = Math.max(1, config.bookings() / Math.max(1, config.cars()));
+        LocalDateTime origin = now.withMinute(0).withSecond(0).withNano(0).minusHours(3L * (perCar / 2));
+        List<Booking> chunk = new ArrayList<>(CHUNK_SIZE);
+        for (int i = 0; i < config.bookings(); i++) {
+            LocalDateTime start = origin.plusHours(3L * (i / cars.size()));
+            Booking booking = new Booking();
+            booking.setCar(cars.get(i % cars.size()));
+            booking.setUser(users.get(i % users.size()));
+            booking.setBookedAt(start.minusDays(1));
+            booking.setStartDateTime(start);
+            booking.setEndDateTime(start.plusHours(2));
+            booking.setDuration(2);
+            booking.setReason(REASONS[i % REASONS.length]);
+            booking.setActive(booking.getEndDateTime().isAfter(now));
+            booking.setReminderSent(true);
+            chunk.add(booking);
+            if (chunk.size() == CHUNK_SIZE) {
+                bookingRepository.saveAll(chunk);
+                chunk.clear();
+            }
+        }
+        bookingRepository.saveAll(chunk);
+
+        context.getBean(BookingTimelineIndex.class).warmUp();
+        context.getBean(ActiveBookingTimeline.class).reload();
+        context.getBean(CarOccupancyTracker.class).warmUp();
+        context.getBean(StatisticsService.class).rebuild();
+        logger.info("Dati di carico generati: {} auto, {} utenti, {} prenotazioni.", cars.size(), users.size(), config.bookings());
+
+        return new LoadTestData(cars.stream().map(Car::getId).toList(),
+                users.stream().map(User::getUsername).toList());
+    }
+
+    public record LoadTestData(List<Long> carIds, List<String> usernames) {
+    }
+}
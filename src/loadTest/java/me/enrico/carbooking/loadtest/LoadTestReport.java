@@ -0,0 +1,87 @@
+package me.enrico.carbooking.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Risultati della fase di misura: throughput e percentili di latenza per endpoint, verifica degli SLO.
+ * Le latenze sono registrate in microsecondi e riportate in millisecondi.
+ */
+public record LoadTestReport(Map<Endpoint, EndpointStats.Interval> intervals, Duration elapsed) {
+
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    public void print(PrintStream out) {
+        double seconds = elapsed.toNanos() / 1e9;
+        out.printf("%n%-12s %9s %9s %8s %8s %8s %8s %8s %8s %8s%n",
+                "endpoint", "richieste", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "errori", "respinte");
+        long total = 0;
+        for (Map.Entry<Endpoint, EndpointStats.Interval> entry : intervals.entrySet()) {
+            Histogram histogram = entry.getValue().histogram();
+            total += histogram.getTotalCount();
+            out.printf("%-12s %9d %9.1f %8.2f %8.2f %8.2f %8.2f %8.2f %8d %8d%n",
+                    entry.getKey().key(),
+                    histogram.getTotalCount(),
+                    histogram.getTotalCount() / seconds,
+                    millis(histogram.getValueAtPercentile(50)),
+                    millis(histogram.getValueAtPercentile(90)),
+                    millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue()),
+                    entry.getValue().errors(),
+                    entry.getValue().rejected());
+        }
+        out.printf("%ntotale: %d richieste in %.1f s, %.1f req/s%n", total, seconds, total / seconds);
+    }
+
+    /**
+     * Scrive la distribuzione completa di ogni endpoint in formato .hgrm (leggibile con HdrHistogram Plotter).
+     */
+    public void writeHistograms(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        for (Map.Entry<Endpoint, EndpointStats.Interval> entry : intervals.entrySet()) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(directory.resolve(entry.getKey().key() + ".hgrm")))) {
+                entry.getValue().histogram().outputPercentileDistribution(out, MICROS_PER_MILLI);
+            }
+        }
+    }
+
+    /**
+     * Elenco degli SLO non rispettati; vuoto se il test è superato.
+     */
+    public List<String> checkSlo(LoadTestConfig config) {
+        List<String> violations = new ArrayList<>();
+        long requests = 0;
+        long errors = 0;
+        for (Map.Entry<Endpoint, EndpointStats.Interval> entry : intervals.entrySet()) {
+            Histogram histogram = entry.getValue().histogram();
+            requests += histogram.getTotalCount();
+            errors += entry.getValue().errors();
+            Double limit = config.p99LimitsMillis().get(entry.getKey());
+            if (limit != null && histogram.getTotalCount() > 0) {
+                double p99 = millis(histogram.getValueAtPercentile(99));
+                if (p99 > limit) {
+                    violations.add(String.format("%s: p99 %.2f ms oltre il limite di %.2f ms", entry.getKey().key(), p99, limit));
+                }
+            }
+        }
+        if (requests == 0) {
+            violations.add("Nessuna richiesta completata nella fase di misura");
+        } else if ((double) errors / requests > config.maxErrorRate()) {
+            violations.add(String.format("Errori %d su %d richieste, oltre il limite del %.2f%%", errors, requests, config.maxErrorRate() * 100));
+        }
+        return violations;
+    }
+
+    private static double millis(long micros) {
+        return micros / MICROS_PER_MILLI;
+    }
+}
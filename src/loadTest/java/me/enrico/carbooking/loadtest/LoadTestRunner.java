@@ -0,0 +1,114 @@
+package me.enrico.carbooking.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetup;
+import io.micrometer.core.instrument.MeterRegistry;
+import me.enrico.carbooking.CarbookingApplication;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Test di carico end-to-end: avvia l'applicazione completa con il profilo {@code loadtest} (H2 in modalità MySQL)
+ * e un server SMTP GreenMail in-process, genera i dati, poi {@code concurrency} utenti virtuali eseguono il mix di
+ * {@link Endpoint} per il riscaldamento e per la durata della misura. Stampa throughput e percentili per endpoint,
+ * salva gli istogrammi e termina con codice 1 se uno SLO non è rispettato.
+ * <p>
+ * Si esegue con {@code ./gradlew loadTest}; i parametri sono descritti in {@link LoadTestConfig}. Confronto tra thread
+ * di piattaforma e virtual thread con 1000 client della dashboard:
+ * {@code ./gradlew loadTest -Dloadtest.mix=dashboard -Dloadtest.concurrency=1000 -Dloadtest.virtual-threads=false}
+ * e poi la stessa esecuzione con {@code -Dloadtest.virtual-threads=true}.
+ * Su una macchina con una sola CPU lo scenario da 1000 client non dà risultati: i login bcrypt concorrenti mandano
+ * ogni richiesta oltre il timeout di 30 s del client in entrambe le modalità. Lì il confronto è stato misurato solo
+ * con 20 e 200 client; il dato a 1000 client va ancora raccolto su una macchina con più core.
+ * <p>
+ * Repliche in lettura: {@code ./gradlew loadTest -Dloadtest.replicas=true} stampa quante connessioni sono andate al
+ * primario e alla replica; con {@code -Dloadtest.replica-lag=30} la replica risulta in ritardo e tutto torna sul primario.
+ */
+public class LoadTestRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTestRunner.class);
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.fromSystemProperties();
+        GreenMail smtp = new GreenMail(new ServerSetup(config.smtpPort(), "localhost", ServerSetup.PROTOCOL_SMTP));
+        smtp.setUser("loadtest@carbooking.local", "loadtest"); // Le credenziali di spring.mail nel profilo loadtest
+        smtp.start();
+
+        // Argomenti da riga di comando, non proprietà di default: queste ultime perdono contro application.properties
+        List<String> arguments = new ArrayList<>(List.of(
+                "--spring.mail.port=" + config.smtpPort(),
+                "--spring.threads.virtual.enabled=" + config.virtualThreads(),
+                "--carbooking.datasource.replicas.lag-query=SELECT " + config.replicaLagSeconds()));
+        arguments.addAll(List.of(args));
+
+        List<String> violations;
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(CarbookingApplication.class)
+                .profiles(config.replicas() ? new String[]{"loadtest", "replicas"} : new String[]{"loadtest"})
+                .run(arguments.toArray(new String[0]))) {
+            LoadTestDataGenerator.LoadTestData data = new LoadTestDataGenerator(context).generate(config);
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            LoadTestReport report = run(config, URI.create("http://localhost:" + port), data);
+
+            report.print(System.out);
+            report.writeHistograms(config.reportDir());
+            System.out.printf("email ricevute dal server SMTP di prova: %d%n", smtp.getReceivedMessages().length);
+            context.getBean(MeterRegistry.class).find("carbooking.datasource.routing").counters().forEach(counter ->
+                    System.out.printf("connessioni verso %s: %.0f%n", counter.getId().getTag("target"), counter.count()));
+            violations = report.checkSlo(config);
+        } finally {
+            smtp.stop();
+        }
+
+        if (!violations.isEmpty()) {
+            violations.forEach(violation -> System.err.println("SLO non rispettato: " + violation));
+            System.exit(1);
+        }
+        System.out.println("Tutti gli SLO sono rispettati.");
+        System.exit(0);
+    }
+
+    private static LoadTestReport run(LoadTestConfig config, URI baseUri, LoadTestDataGenerator.LoadTestData data) throws InterruptedException {
+        Map<Endpoint, EndpointStats> stats = new EnumMap<>(Endpoint.class);
+        for (Endpoint endpoint : Endpoint.values()) {
+            stats.put(endpoint, new EndpointStats(endpoint));
+        }
+        ObjectMapper objectMapper = new ObjectMapper();
+        HttpClient client = VirtualUser.newSharedClient();
+        long deadline = System.nanoTime() + config.warmUp().toNanos() + config.duration().toNanos();
+
+        logger.info("Carico avviato: {} utenti virtuali, mix {}, virtual thread {}, repliche {}, riscaldamento {}, misura {}.", config.concurrency(),
+                config.dashboardOnly() ? "dashboard" : "completo", config.virtualThreads() ? "sì" : "no", config.replicas() ? "sì" : "no",
+                config.warmUp(), config.duration());
+        long measureStart;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < config.concurrency(); i++) {
+                VirtualUser user = new VirtualUser(client, baseUri, data.usernames().get(i % data.usernames().size()), data.carIds(),
+                        stats, objectMapper, config.dashboardOnly());
+                executor.submit(() -> user.runUntil(deadline));
+            }
+            Thread.sleep(config.warmUp());
+            // Scarta quanto registrato durante il riscaldamento (JIT, connessioni, cache)
+            stats.values().forEach(EndpointStats::interval);
+            measureStart = System.nanoTime();
+        } // close() attende la fine di tutti gli utenti virtuali
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - measureStart);
+
+        Map<Endpoint, EndpointStats.Interval> intervals = new EnumMap<>(Endpoint.class);
+        stats.forEach((endpoint, endpointStats) -> intervals.put(endpoint, endpointStats.interval()));
+        return new LoadTestReport(intervals, elapsed);
+    }
+}
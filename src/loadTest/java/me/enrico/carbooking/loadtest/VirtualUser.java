@@ -0,0 +1,191 @@
+package me.enrico.carbooking.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Un utente che esegue richieste una dopo l'altra (modello a ciclo chiuso) con la propria sessione.
+ * L'{@link HttpClient} è condiviso da tutti gli utenti (con migliaia di client ognuno avrebbe il proprio thread
+ * di I/O): il cookie di sessione o del token è tenuto qui e inviato a ogni richiesta.
+ * Ogni prenotazione creata viene subito terminata o annullata, così la linea temporale resta di dimensione costante.
+ */
+public class VirtualUser {
+
+    private static final ZoneId ROME_ZONE = ZoneId.of("Europe/Rome");
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final URI baseUri;
+    private final String username;
+    private final List<Long> carIds;
+    private final Map<Endpoint, EndpointStats> stats;
+    private final ObjectMapper objectMapper;
+    private final HttpClient client;
+    private final boolean dashboardOnly;
+    private String cookies;
+
+    public VirtualUser(HttpClient client, URI baseUri, String username, List<Long> carIds, Map<Endpoint, EndpointStats> stats,
+                       ObjectMapper objectMapper, boolean dashboardOnly) {
+        this.client = client;
+        this.baseUri = baseUri;
+        this.username = username;
+        this.carIds = carIds;
+        this.stats = stats;
+        this.objectMapper = objectMapper;
+        this.dashboardOnly = dashboardOnly;
+    }
+
+    public static HttpClient newSharedClient() {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(REQUEST_TIMEOUT)
+                .build();
+    }
+
+    public void runUntil(long deadlineNanos) {
+        try {
+            login();
+            while (System.nanoTime() < deadlineNanos && !Thread.currentThread().isInterrupted()) {
+                // Dopo un login fallito (ad esempio scaduto sotto carico) si riprova invece di continuare senza sessione
+                execute(cookies == null ? Endpoint.LOGIN : Endpoint.pick(ThreadLocalRandom.current().nextDouble(), dashboardOnly));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void execute(Endpoint endpoint) throws InterruptedException {
+        switch (endpoint) {
+            case LOGIN -> login();
+            case CARS -> get(endpoint, "/api/cars");
+            case OCCUPIED -> get(endpoint, "/api/cars/occupied");
+            case FUTURE -> get(endpoint, "/api/cars/future-bookings");
+            case AVAILABLE -> {
+                LocalDateTime from = randomFutureHour();
+                get(endpoint, "/api/cars/available?from=" + from + "&to=" + from.plusHours(2) + "&minSeats=4");
+            }
+            case BOOK -> bookAndRelease();
+            case STATISTICS -> get(endpoint, "/api/statistics");
+            default -> throw new IllegalArgumentException("Operazione non prevista nel mix: " + endpoint);
+        }
+    }
+
+    private void login() throws InterruptedException {
+        cookies = null;
+        String form = "username=" + URLEncoder.encode(username, StandardCharsets.UTF_8)
+                + "&password=" + URLEncoder.encode(LoadTestDataGenerator.PASSWORD, StandardCharsets.UTF_8);
+        HttpResponse<byte[]> response = send(Endpoint.LOGIN, request("/perform_login")
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form)));
+        // Il login riuscito reindirizza alla home, quello fallito alla pagina di login con ?error
+        String location = response == null ? null : response.headers().firstValue("Location").orElse(null);
+        if (response != null && (response.statusCode() != 302 || location == null || location.contains("error"))) {
+            stats.get(Endpoint.LOGIN).error();
+        } else if (response != null) {
+            // JSESSIONID oppure il cookie del token in modalità stateless: si tiene solo nome=valore
+            cookies = response.headers().allValues("Set-Cookie").stream()
+                    .map(cookie -> cookie.split(";", 2)[0])
+                    .collect(Collectors.joining("; "));
+        }
+    }
+
+    private void get(Endpoint endpoint, String path) throws InterruptedException {
+        HttpResponse<byte[]> response = send(endpoint, request(path).GET());
+        if (response != null && response.statusCode() != 200) {
+            stats.get(endpoint).error();
+        }
+    }
+
+    private void bookAndRelease() throws InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Long carId = carIds.get(random.nextInt(carIds.size()));
+        LocalDateTime start = randomFutureHour();
+        String body = "{\"startDateTime\":\"" + start + "\",\"endDateTime\":\"" + start.plusHours(1 + random.nextInt(3))
+                + "\",\"reason\":\"Carico\"}";
+        HttpResponse<byte[]> response = send(Endpoint.BOOK, request("/api/cars/book/" + carId)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body)));
+        if (response == null) {
+            return;
+        }
+        if (response.statusCode() == 400) {
+            stats.get(Endpoint.BOOK).rejected(); // Periodo già prenotato da un altro utente virtuale
+            return;
+        }
+        if (response.statusCode() != 200) {
+            stats.get(Endpoint.BOOK).error();
+            return;
+        }
+
+        long bookingId;
+        try {
+            JsonNode booking = objectMapper.readTree(response.body());
+            bookingId = booking.get("id").asLong();
+        } catch (IOException | NullPointerException e) {
+            stats.get(Endpoint.BOOK).error();
+            return;
+        }
+        if (random.nextBoolean()) {
+            expectOk(Endpoint.TERMINATE, send(Endpoint.TERMINATE, request("/api/cars/terminate/" + bookingId)
+                    .POST(HttpRequest.BodyPublishers.noBody())));
+        } else {
+            expectOk(Endpoint.CANCEL, send(Endpoint.CANCEL, request("/api/cars/cancel/" + bookingId).DELETE()));
+        }
+    }
+
+    private void expectOk(Endpoint endpoint, HttpResponse<byte[]> response) {
+        if (response != null && response.statusCode() != 200) {
+            stats.get(endpoint).error();
+        }
+    }
+
+    /**
+     * Esegue la richiesta e ne registra la latenza; {@code null} se la richiesta non ha ricevuto risposta.
+     */
+    private HttpResponse<byte[]> send(Endpoint endpoint, HttpRequest.Builder request) throws InterruptedException {
+        EndpointStats endpointStats = stats.get(endpoint);
+        long start = System.nanoTime();
+        try {
+            HttpResponse<byte[]> response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+            endpointStats.record(System.nanoTime() - start);
+            return response;
+        } catch (IOException e) {
+            endpointStats.record(System.nanoTime() - start);
+            endpointStats.error();
+            return null;
+        }
+    }
+
+    private HttpRequest.Builder request(String path) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(baseUri.resolve(path)).timeout(REQUEST_TIMEOUT);
+        if (cookies != null && !cookies.isEmpty()) {
+            request.header("Cookie", cookies);
+        }
+        return request;
+    }
+
+    /**
+     * Un'ora intera tra uno e dodici mesi da adesso.
+     */
+    private static LocalDateTime randomFutureHour() {
+        return LocalDateTime.now(ROME_ZONE).truncatedTo(ChronoUnit.HOURS)
+                .plusDays(30)
+                .plusHours(ThreadLocalRandom.current().nextInt(24 * 330));
+    }
+}
@@ -0,0 +1,85 @@
+package me.enrico.carbooking.backend;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.dialect.sequence.SequenceSupport;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Porta la sequenza degli id delle prenotazioni oltre l'id massimo già presente.
+ * <p>
+ * Le prenotazioni create con IDENTITY hanno già occupato gli id bassi, mentre la sequenza {@code booking_seq}
+ * creata da Hibernate parte da 1. Su MySQL la sequenza è la tabella {@code booking_seq} (riga {@code next_val}),
+ * sugli altri database (H2 compreso) una sequenza nativa. Se l'allineamento fallisce l'avvio si interrompe:
+ * altrimenti i primi inserimenti fallirebbero più tardi per id duplicati.
+ * <p>
+ * Migrazione di un database MySQL esistente: {@code ddl-auto=update} crea la tabella {@code booking_seq} ma lascia
+ * {@code AUTO_INCREMENT} sulla colonna {@code booking.id}, che resta innocuo perché Hibernate scrive l'id esplicitamente
+ * (si può togliere con {@code ALTER TABLE booking MODIFY id BIGINT NOT NULL}). Il primo avvio dopo la migrazione
+ * va fatto con una sola istanza: l'allineamento di una sequenza nativa non è atomico tra più istanze.
+ * <p>
+ * Viene eseguito dopo la creazione dello schema (dipende dall'{@link EntityManagerFactory}) e prima di
+ * {@link DataLoader} e di qualsiasi richiesta.
+ */
+@Component
+public class BookingSequenceInitializer {
+
+    private static final Logger logger = LoggerFactory.getLogger(BookingSequenceInitializer.class);
+    private static final String SEQUENCE_NAME = "booking_seq";
+    private static final int ALLOCATION_SIZE = 50; // Come @SequenceGenerator su Booking
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SequenceSupport sequenceSupport;
+
+    public BookingSequenceInitializer(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sequenceSupport = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices().getDialect().getSequenceSupport();
+    }
+
+    @PostConstruct
+    public void alignSequence() {
+        try {
+            long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM booking", Long.class);
+            boolean aligned = sequenceSupport.supportsSequences() ? alignNativeSequence(maxId) : alignSequenceTable(maxId);
+            if (aligned) {
+                logger.info("Sequenza {} allineata all'id massimo delle prenotazioni ({}).", SEQUENCE_NAME, maxId);
+            }
+        } catch (DataAccessException e) {
+            throw new IllegalStateException("Impossibile allineare la sequenza " + SEQUENCE_NAME
+                    + " all'id massimo delle prenotazioni: gli inserimenti fallirebbero per id duplicati", e);
+        }
+    }
+
+    /**
+     * Con l'optimizer pooled il valore letto è l'estremo superiore del blocco [valore - 49, valore]:
+     * deve superare di almeno allocationSize l'id massimo.
+     */
+    private boolean alignSequenceTable(long maxId) {
+        Integer rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + SEQUENCE_NAME, Integer.class);
+        if (rows == null || rows == 0) {
+            // Tabella creata da ddl-auto=update senza la riga iniziale
+            jdbcTemplate.update("INSERT INTO " + SEQUENCE_NAME + " (next_val) VALUES (?)", maxId + ALLOCATION_SIZE + 1);
+            return true;
+        }
+        return jdbcTemplate.update("UPDATE " + SEQUENCE_NAME + " SET next_val = ? WHERE next_val <= ?",
+                maxId + ALLOCATION_SIZE + 1, maxId + ALLOCATION_SIZE) > 0;
+    }
+
+    /**
+     * Il valore letto consuma un blocco; se il blocco può contenere id già usati la sequenza riparte oltre l'id massimo.
+     */
+    private boolean alignNativeSequence(long maxId) {
+        long next = jdbcTemplate.queryForObject(sequenceSupport.getSequenceNextValString(SEQUENCE_NAME), Long.class);
+        if (next - ALLOCATION_SIZE + 1 > maxId) {
+            return false;
+        }
+        jdbcTemplate.execute("ALTER SEQUENCE " + SEQUENCE_NAME + " RESTART WITH " + (maxId + ALLOCATION_SIZE + 1));
+        return true;
+    }
+}
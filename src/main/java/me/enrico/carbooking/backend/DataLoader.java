@@ -8,6 +8,7 @@ import me.enrico.carbooking.repositories.UserRepository; // Aggiungi import
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.security.crypto.password.PasswordEncoder; // Aggiungi import
 
 import java.util.Set; // Aggiungi import
@@ -16,6 +17,7 @@ import java.util.Set; // Aggiungi import
 public class DataLoader {
 
     @Bean
+    @DependsOn("bookingSequenceInitializer") // La sequenza delle prenotazioni va allineata prima di ogni inserimento
     CommandLineRunner initDatabase(CarRepository carRepository,
                                    UserRepository userRepository, // Inietta UserRepository
                                    PasswordEncoder passwordEncoder) { // Inietta PasswordEncoder
@@ -0,0 +1,18 @@
+package me.enrico.carbooking.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Autenticazione senza sessione: se {@code stateless} è attivo, il login emette un token firmato con HMAC
+ * invece di creare la sessione HTTP. Tutte le repliche devono condividere lo stesso {@code secret}.
+ */
+@ConfigurationProperties(prefix = "carbooking.auth")
+public record AuthTokenProperties(boolean stateless, String secret, Duration tokenTtl, String cookieName) {
+
+    public AuthTokenProperties {
+        tokenTtl = tokenTtl != null ? tokenTtl : Duration.ofHours(8);
+        cookieName = cookieName != null ? cookieName : "CARBOOKING_TOKEN";
+    }
+}
@@ -1,41 +1,48 @@
 package me.enrico.carbooking.config;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.cache.concurrent.ConcurrentMapCache;
-import org.springframework.cache.support.SimpleCacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.scheduling.annotation.EnableScheduling;
-import org.springframework.scheduling.annotation.Scheduled;
 
-import java.util.Arrays;
 import java.util.List;
 
 @Configuration
 @EnableCaching
-@EnableScheduling
+@EnableConfigurationProperties(CarBookingCacheProperties.class)
 public class CachingConfig {
 
-    private CacheManager cacheManager;
-
+    /**
+     * Cache limitate per dimensione e con scadenza propria, configurate da {@link CarBookingCacheProperties}.
+     * Le voci scadono singolarmente (eviction W-TinyLFU di Caffeine), senza svuotare tutte le cache insieme.
+     */
     @Bean
-    public CacheManager cacheManager() {
-        SimpleCacheManager cacheManager = new SimpleCacheManager();
-        cacheManager.setCaches(Arrays.asList(
-                new ConcurrentMapCache("cars"),
-                new ConcurrentMapCache("occupiedCars"),
-                new ConcurrentMapCache("futureBookings")
-        ));
-        this.cacheManager = cacheManager;
+    public CacheManager cacheManager(CarBookingCacheProperties properties) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        properties.specs().forEach((cacheName, spec) ->
+                cacheManager.registerCustomCache(cacheName, Caffeine.from(spec).recordStats().build()));
+        cacheManager.setCacheNames(List.of()); // Solo le cache configurate: un nome sconosciuto è un errore
         return cacheManager;
     }
 
-    @Scheduled(fixedRate = 60000)
-    public void clearCaches() {
-        if (cacheManager != null) {
-            cacheManager.getCacheNames()
-                    .forEach(cacheName -> cacheManager.getCache(cacheName).clear());
-        }
+    /**
+     * Hit ratio di ogni cache come gauge {@code carbooking.cache.hit.ratio}, dalle statistiche di Caffeine.
+     * I contatori completi ({@code cache.gets}, {@code cache.evictions}, ...) li registra già Actuator per ogni cache.
+     */
+    @Bean
+    public MeterBinder cacheHitRatioMetrics(CacheManager cacheManager) {
+        return registry -> cacheManager.getCacheNames().forEach(name -> {
+            if (cacheManager.getCache(name) instanceof CaffeineCache cache) {
+                Gauge.builder("carbooking.cache.hit.ratio", cache, c -> c.getNativeCache().stats().hitRate())
+                        .tag("cache", name)
+                        .register(registry);
+            }
+        });
     }
-}
\ No newline at end of file
+}
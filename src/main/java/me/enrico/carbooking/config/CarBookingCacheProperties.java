@@ -0,0 +1,17 @@
+package me.enrico.carbooking.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.Map;
+
+/**
+ * Specifiche delle cache applicative, nel formato {@code CaffeineSpec}
+ * (es. {@code maximumSize=500,expireAfterWrite=10m}), indicizzate per nome della cache.
+ */
+@ConfigurationProperties(prefix = "carbooking.cache")
+public record CarBookingCacheProperties(Map<String, String> specs) {
+
+    public CarBookingCacheProperties {
+        specs = specs != null ? specs : Map.of();
+    }
+}
@@ -0,0 +1,112 @@
+package me.enrico.carbooking.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Letture sulle repliche ({@code carbooking.datasource.replicas.urls}): il DataSource dell'applicazione diventa un
+ * {@link ReplicaRoutingDataSource} che manda le transazioni {@code @Transactional(readOnly = true)} alle repliche
+ * e le scritture al primario ({@code spring.datasource.*}).
+ * <p>
+ * Ogni replica ha un pool Hikari con la stessa configurazione del primario ({@code spring.datasource.hikari.*}),
+ * connessioni in sola lettura e, in modalità virtual thread, lo stesso {@link BulkheadDataSource}. Una replica che non
+ * risponde all'avvio non blocca l'applicazione: resta esclusa finché {@link ReplicaLagMonitor} non la trova in linea.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "carbooking.datasource.replicas", name = "urls")
+@EnableConfigurationProperties(ReplicaDataSourceProperties.class)
+public class ReadReplicaConfig implements DisposableBean {
+
+    private final List<HikariDataSource> replicaPools = new ArrayList<>();
+    private final Map<String, DataSource> replicas = new LinkedHashMap<>();
+
+    public ReadReplicaConfig(ReplicaDataSourceProperties properties, DataSourceProperties primary,
+                             Environment environment, MeterRegistry meterRegistry) {
+        boolean virtualThreads = environment.getProperty("spring.threads.virtual.enabled", Boolean.class, false);
+        for (int i = 0; i < properties.urls().size(); i++) {
+            HikariConfig config = new HikariConfig();
+            Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(config));
+            config.setPoolName("replica-" + i);
+            config.setJdbcUrl(properties.urls().get(i));
+            config.setUsername(properties.username() != null ? properties.username() : primary.determineUsername());
+            config.setPassword(properties.password() != null ? properties.password() : primary.determinePassword());
+            config.setDriverClassName(primary.determineDriverClassName());
+            config.setReadOnly(true);
+            config.setInitializationFailTimeout(-1);
+            config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+
+            HikariDataSource pool = new HikariDataSource(config);
+            replicaPools.add(pool);
+            replicas.put(config.getPoolName(), virtualThreads
+                    ? new BulkheadDataSource(pool, pool.getMaximumPoolSize(), Duration.ofMillis(pool.getConnectionTimeout()))
+                    : pool);
+        }
+    }
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName(ReplicaRoutingDataSource.PRIMARY);
+        return dataSource;
+    }
+
+    @Bean
+    public ReplicaLagMonitor replicaLagMonitor(ReplicaDataSourceProperties properties) {
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(replicas, properties.maxLag(), properties.lagQuery());
+        monitor.check(); // Stato iniziale prima che arrivino richieste, poi a intervalli regolari
+        return monitor;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                 ReplicaLagMonitor lagMonitor, MeterRegistry meterRegistry) {
+        Map<Object, Object> targets = new HashMap<>(replicas);
+        targets.put(ReplicaRoutingDataSource.PRIMARY, primaryDataSource);
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(lagMonitor, meterRegistry);
+        routing.setTargetDataSources(targets);
+        routing.setDefaultTargetDataSource(primaryDataSource);
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    @Bean
+    public MeterBinder replicaBulkheadMetrics() {
+        return registry -> replicas.forEach((name, dataSource) -> {
+            if (dataSource instanceof BulkheadDataSource bulkhead) {
+                VirtualThreadsConfig.bindBulkhead(registry, name, bulkhead);
+            }
+        });
+    }
+
+    @Override
+    public void destroy() {
+        replicaPools.forEach(HikariDataSource::close);
+    }
+}
@@ -0,0 +1,22 @@
+package me.enrico.carbooking.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Repliche in sola lettura del database. Se {@code urls} è vuoto tutto va sul primario.
+ * Credenziali non indicate: si usano quelle di {@code spring.datasource}. {@code lagQuery} restituisce il ritardo
+ * della replica in secondi (colonna {@code Seconds_Behind_Source} per {@code SHOW REPLICA STATUS} di MySQL,
+ * altrimenti la prima colonna); una replica oltre {@code maxLag} o che non risponde viene esclusa.
+ */
+@ConfigurationProperties(prefix = "carbooking.datasource.replicas")
+public record ReplicaDataSourceProperties(List<String> urls, String username, String password, Duration maxLag, String lagQuery) {
+
+    public ReplicaDataSourceProperties {
+        urls = urls != null ? urls.stream().filter(url -> !url.isBlank()).toList() : List.of();
+        maxLag = maxLag != null ? maxLag : Duration.ofSeconds(5);
+        lagQuery = lagQuery != null ? lagQuery : "SHOW REPLICA STATUS";
+    }
+}
@@ -0,0 +1,132 @@
+package me.enrico.carbooking.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Misura periodicamente il ritardo di ogni replica con {@code lagQuery} e tiene l'elenco di quelle utilizzabili:
+ * ritardo noto e non oltre {@code maxLag}. Una replica che non risponde, con la replicazione ferma (ritardo NULL)
+ * o troppo indietro viene esclusa fino al controllo successivo; senza repliche utilizzabili le letture vanno sul primario.
+ */
+public class ReplicaLagMonitor implements MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+    // Colonne di SHOW REPLICA STATUS (MySQL 8.0.22+) e del vecchio SHOW SLAVE STATUS
+    private static final Set<String> LAG_COLUMNS = Set.of("seconds_behind_source", "seconds_behind_master");
+    private static final int QUERY_TIMEOUT_SECONDS = 5;
+
+    private final Map<String, JdbcTemplate> replicas = new LinkedHashMap<>();
+    private final Duration maxLag;
+    private final String lagQuery;
+    // Ritardo in secondi dell'ultimo controllo; assente se il controllo è fallito o la replicazione è ferma
+    private final Map<String, Long> lagSeconds = new ConcurrentHashMap<>();
+    private volatile List<String> healthy = List.of();
+
+    public ReplicaLagMonitor(Map<String, DataSource> replicas, Duration maxLag, String lagQuery) {
+        replicas.forEach((name, dataSource) -> {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            jdbcTemplate.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+            this.replicas.put(name, jdbcTemplate);
+        });
+        this.maxLag = maxLag;
+        this.lagQuery = lagQuery;
+    }
+
+    /**
+     * Repliche utilizzabili secondo l'ultimo controllo, nell'ordine di configurazione.
+     */
+    public List<String> getHealthyReplicas() {
+        return healthy;
+    }
+
+    @Scheduled(fixedDelayString = "${carbooking.datasource.replicas.check-interval:5000}",
+            initialDelayString = "${carbooking.datasource.replicas.check-interval:5000}")
+    public void check() {
+        List<String> usable = new ArrayList<>();
+        for (Map.Entry<String, JdbcTemplate> replica : replicas.entrySet()) {
+            String name = replica.getKey();
+            Long lag = measure(name, replica.getValue());
+            if (lag != null) {
+                lagSeconds.put(name, lag);
+            } else {
+                lagSeconds.remove(name);
+            }
+            if (lag != null && lag <= maxLag.toSeconds()) {
+                usable.add(name);
+            }
+        }
+
+        List<String> previous = healthy;
+        healthy = List.copyOf(usable);
+        if (!healthy.equals(previous)) {
+            if (healthy.isEmpty()) {
+                logger.warn("Nessuna replica utilizzabile (ritardo massimo {} s): le letture vanno sul primario.", maxLag.toSeconds());
+            } else {
+                logger.info("Repliche utilizzabili per le letture: {}.", healthy);
+            }
+        }
+    }
+
+    private Long measure(String name, JdbcTemplate jdbcTemplate) {
+        try {
+            Long lag = jdbcTemplate.query(lagQuery, ReplicaLagMonitor::readLag);
+            if (lag == null) {
+                logger.warn("Replica {}: replicazione ferma o ritardo non disponibile.", name);
+            } else if (lag > maxLag.toSeconds()) {
+                logger.warn("Replica {}: ritardo di {} s, oltre il massimo di {} s.", name, lag, maxLag.toSeconds());
+            }
+            return lag;
+        } catch (RuntimeException e) {
+            logger.warn("Replica {} non raggiungibile: {}", name, e.getMessage());
+            return null;
+        }
+    }
+
+    private static Long readLag(ResultSet resultSet) throws SQLException {
+        if (!resultSet.next()) {
+            return null; // SHOW REPLICA STATUS vuoto: il server non è una replica
+        }
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int column = 1;
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            if (LAG_COLUMNS.contains(metaData.getColumnLabel(i).toLowerCase())) {
+                column = i;
+                break;
+            }
+        }
+        long lag = resultSet.getLong(column);
+        return resultSet.wasNull() ? null : lag;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (String name : replicas.keySet()) {
+            Gauge.builder("carbooking.datasource.replica.lag", lagSeconds, lags -> lags.getOrDefault(name, -1L))
+                    .description("Ritardo della replica in secondi, -1 se non disponibile")
+                    .baseUnit("seconds")
+                    .tag("replica", name)
+                    .register(registry);
+            Gauge.builder("carbooking.datasource.replica.healthy", this, monitor -> monitor.healthy.contains(name) ? 1 : 0)
+                    .description("1 se la replica riceve le letture, 0 se è esclusa")
+                    .tag("replica", name)
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package me.enrico.carbooking.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sceglie il database per ogni connessione: le transazioni {@code readOnly} dell'applicazione vanno a turno sulle
+ * repliche utilizzabili secondo {@link ReplicaLagMonitor}, tutto il resto sul primario. Va avvolto in un
+ * {@code LazyConnectionDataSourceProxy}: la connessione deve essere chiesta al primo statement, quando il flag
+ * read-only della transazione è già impostato.
+ * <p>
+ * Le transazioni read-only implicite dei repository Spring Data ({@code findById}, {@code findAll}, {@code count}
+ * chiamati fuori da un servizio) restano sul primario: spesso precedono una scrittura e non devono vedere dati in ritardo.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    public static final String PRIMARY = "primary";
+    private static final String SPRING_DATA_PREFIX = "org.springframework.data.";
+
+    private final ReplicaLagMonitor lagMonitor;
+    private final MeterRegistry meterRegistry;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Map<String, Counter> routed = new ConcurrentHashMap<>();
+
+    public ReplicaRoutingDataSource(ReplicaLagMonitor lagMonitor, MeterRegistry meterRegistry) {
+        this.lagMonitor = lagMonitor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String target = chooseTarget();
+        routed.computeIfAbsent(target, key -> Counter.builder("carbooking.datasource.routing")
+                .description("Connessioni assegnate al primario o a una replica")
+                .tag("target", key)
+                .register(meterRegistry)).increment();
+        return target;
+    }
+
+    private String chooseTarget() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        String transactionName = TransactionSynchronizationManager.getCurrentTransactionName();
+        if (transactionName != null && transactionName.startsWith(SPRING_DATA_PREFIX)) {
+            return PRIMARY;
+        }
+        List<String> replicas = lagMonitor.getHealthyReplicas();
+        if (replicas.isEmpty()) {
+            return PRIMARY;
+        }
+        return replicas.get(Math.floorMod(next.getAndIncrement(), replicas.size()));
+    }
+}
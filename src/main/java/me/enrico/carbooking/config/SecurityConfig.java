@@ -1,26 +1,37 @@
 package me.enrico.carbooking.config;
 
+import me.enrico.carbooking.model.User;
+import me.enrico.carbooking.service.AuthTokenService;
 import me.enrico.carbooking.service.CustomUserDetailsService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.AuthenticationSuccessHandler;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
 @Configuration
 @EnableWebSecurity
+@EnableConfigurationProperties(AuthTokenProperties.class)
 public class SecurityConfig {
 
     private final CustomUserDetailsService customUserDetailsService;
+    private final AuthTokenService authTokenService;
 
     @Autowired
-    public SecurityConfig(CustomUserDetailsService customUserDetailsService) {
+    public SecurityConfig(CustomUserDetailsService customUserDetailsService, AuthTokenService authTokenService) {
         this.customUserDetailsService = customUserDetailsService;
+        this.authTokenService = authTokenService;
     }
 
     @Bean
@@ -45,9 +56,13 @@ public class SecurityConfig {
                 .requestMatchers("/css/**", "/js/**", "/images/**", "/webjars/**").permitAll() // Allow static resources
                 .requestMatchers("/login").permitAll() // Allow access to login and registration pages
                 .requestMatchers("/api/statistics").permitAll() // Example: Allow public access to statistics
+                .requestMatchers("/api/statistics/**").hasRole("ADMIN") // Ricostruzione e verifica degli aggregati
                 .requestMatchers("/", "/home").authenticated() // MODIFICATO: Richiede autenticazione per la home page
                 .requestMatchers("/api/cars").permitAll() // Lasciato permitAll per ora, valuta se anche questo debba essere autenticato
                 .requestMatchers("/admin/**").hasRole("ADMIN") // Restrict /admin/** to users with ROLE_ADMIN
+                // Health check e scraping Prometheus senza login (esporre solo sulla rete interna); il resto di Actuator è per gli admin
+                .requestMatchers("/actuator/health", "/actuator/prometheus").permitAll()
+                .requestMatchers("/actuator/**").hasRole("ADMIN")
                 .anyRequest().authenticated() // All other requests require authentication
             )
             .formLogin(formLogin -> formLogin
@@ -61,11 +76,35 @@ public class SecurityConfig {
                 .logoutUrl("/perform_logout")
                 .logoutSuccessUrl("/login?logout=true")
                 .invalidateHttpSession(true)
-                .deleteCookies("JSESSIONID")
+                .deleteCookies("JSESSIONID", authTokenService.getProperties().cookieName())
                 .permitAll()
             )
             .csrf(csrf -> csrf.disable()); // Disable CSRF for simplicity in this example, consider enabling it with proper token handling in production
 
+        if (authTokenService.getProperties().stateless()) {
+            // Nessuna sessione: il login emette un token firmato e ogni richiesta si autentica da quello,
+            // così qualunque replica dietro al load balancer può servire qualunque utente
+            http
+                .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                .formLogin(formLogin -> formLogin.successHandler(tokenIssuingSuccessHandler()))
+                .addFilterBefore(new AuthTokenFilter(authTokenService), UsernamePasswordAuthenticationFilter.class);
+        }
+
         return http.build();
     }
+
+    private AuthenticationSuccessHandler tokenIssuingSuccessHandler() {
+        return (request, response, authentication) -> {
+            AuthTokenProperties properties = authTokenService.getProperties();
+            ResponseCookie cookie = ResponseCookie.from(properties.cookieName(), authTokenService.issue((User) authentication.getPrincipal()))
+                    .httpOnly(true)
+                    .secure(request.isSecure())
+                    .sameSite("Lax")
+                    .path("/")
+                    .maxAge(properties.tokenTtl())
+                    .build();
+            response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+            response.sendRedirect(request.getContextPath() + "/");
+        };
+    }
 }
\ No newline at end of file
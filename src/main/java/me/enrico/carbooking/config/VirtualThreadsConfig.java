@@ -0,0 +1,61 @@
+package me.enrico.carbooking.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Modalità virtual thread ({@code spring.threads.virtual.enabled=true}): Spring Boot esegue su virtual thread
+ * le richieste Tomcat, i task {@code @Scheduled} (tra cui l'invio della outbox email) e gli executor applicativi.
+ * <p>
+ * Il limite al parallelismo non è più il numero di thread di Tomcat ma il pool Hikari: il DataSource viene
+ * avvolto in un {@link BulkheadDataSource} con tanti permessi quante connessioni, così le richieste in eccesso
+ * attendono sul semaforo (in ordine di arrivo, con lo stesso timeout di Hikari) invece di accumularsi nel pool.
+ * Con le repliche in lettura ogni pool ha il suo semaforo (vedi {@link ReadReplicaConfig}); le metriche hanno il tag {@code pool}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadsConfig {
+
+    @Bean
+    public static BeanPostProcessor dataSourceBulkhead() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource hikari) {
+                    return new BulkheadDataSource(hikari, hikari.getMaximumPoolSize(), Duration.ofMillis(hikari.getConnectionTimeout()));
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder dataSourceBulkheadMetrics(Map<String, DataSource> dataSources) {
+        return registry -> dataSources.forEach((name, dataSource) -> {
+            if (dataSource instanceof BulkheadDataSource bulkhead) {
+                bindBulkhead(registry, name, bulkhead);
+            }
+        });
+    }
+
+    static void bindBulkhead(MeterRegistry registry, String pool, BulkheadDataSource bulkhead) {
+        Gauge.builder("carbooking.datasource.bulkhead.waiting", bulkhead, BulkheadDataSource::getWaiting)
+                .description("Richieste in attesa di una connessione")
+                .tag("pool", pool)
+                .register(registry);
+        Gauge.builder("carbooking.datasource.bulkhead.in.use", bulkhead, BulkheadDataSource::getInUse)
+                .description("Permessi in uso, al massimo la dimensione del pool")
+                .tag("pool", pool)
+                .register(registry);
+    }
+}
@@ -0,0 +1,44 @@
+package me.enrico.carbooking.controllers;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.RequiredArgsConstructor;
+import me.enrico.carbooking.dto.CacheStatsDTO;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Objects;
+
+@RestController
+@RequestMapping("/admin/caches")
+@RequiredArgsConstructor
+public class CacheStatisticsController {
+
+    private final CacheManager cacheManager;
+
+    @GetMapping
+    public ResponseEntity<List<CacheStatsDTO>> getCacheStatistics() {
+        return ResponseEntity.ok(cacheManager.getCacheNames().stream()
+                .map(cacheManager::getCache)
+                .filter(Objects::nonNull)
+                .filter(CaffeineCache.class::isInstance)
+                .map(cache -> toCacheStatsDTO((CaffeineCache) cache))
+                .toList());
+    }
+
+    private CacheStatsDTO toCacheStatsDTO(CaffeineCache cache) {
+        CacheStats stats = cache.getNativeCache().stats();
+        return CacheStatsDTO.builder()
+                .name(cache.getName())
+                .size(cache.getNativeCache().estimatedSize())
+                .hitCount(stats.hitCount())
+                .missCount(stats.missCount())
+                .hitRate(stats.hitRate())
+                .evictionCount(stats.evictionCount())
+                .build();
+    }
+}
@@ -3,79 +3,159 @@ package me.enrico.carbooking.controllers;
 import lombok.RequiredArgsConstructor;
 import me.enrico.carbooking.dto.BookingDTO;
 import me.enrico.carbooking.dto.CarDTO;
+import me.enrico.carbooking.dto.DtoMapper;
+import me.enrico.carbooking.event.BookingEvent;
 import me.enrico.carbooking.exception.ResourceNotFoundException;
 import me.enrico.carbooking.model.Booking;
 import me.enrico.carbooking.model.Car;
 import me.enrico.carbooking.model.Role;
 import me.enrico.carbooking.model.User;
-import me.enrico.carbooking.repositories.BookingRepository;
 import me.enrico.carbooking.repositories.CarRepository;
+import me.enrico.carbooking.request.BulkBookingRequest;
 import me.enrico.carbooking.request.CarBookingRequest;
+import me.enrico.carbooking.service.ActiveBookingTimeline;
+import me.enrico.carbooking.service.AvailabilityService;
+import me.enrico.carbooking.service.BookingListingService;
 import me.enrico.carbooking.service.BookingService;
+import me.enrico.carbooking.service.BookingStreamHub;
+import me.enrico.carbooking.service.CarOccupancyTracker;
+import me.enrico.carbooking.service.CarService;
+import me.enrico.carbooking.service.CustomUserDetailsService;
 import me.enrico.carbooking.service.EmailService;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import me.enrico.carbooking.repositories.UserRepository; // Aggiungi questo import
-import org.springframework.web.bind.annotation.GetMapping; // Assicurati che GetMapping sia importato
-import java.util.Map; // Aggiungi questo import
-import java.util.HashMap; // Aggiungi questo import
-
 @RestController
 @RequestMapping("/api/cars")
 @RequiredArgsConstructor
 public class CarController {
 
     private final CarRepository carRepository;
-    private final BookingRepository bookingRepository;
     private final BookingService bookingService;
+    private final BookingListingService bookingListingService;
+    private final CarService carService;
+    private final CarOccupancyTracker occupancyTracker;
+    private final ActiveBookingTimeline bookingTimeline;
+    private final BookingStreamHub bookingStreamHub;
+    private final AvailabilityService availabilityService;
     private final EmailService emailService;
-    private final UserRepository userRepository; // Aggiungi questo campo
+    private final CustomUserDetailsService userDetailsService;
     private static final ZoneId ROME_ZONE = ZoneId.of("Europe/Rome");
     private static final Logger logger = LoggerFactory.getLogger(CarController.class);
 
-    @Cacheable("cars")
+    // Le liste sono identificate da un ETag forte derivato dalla versione dei dati: se il client ha già
+    // la versione corrente risponde 304 senza leggere le auto né serializzare il JSON
     @GetMapping
-    public ResponseEntity<List<CarDTO>> getAllCars() {
-        List<Car> cars = carRepository.findAll();
-        return ResponseEntity.ok(cars.stream()
-                .map(this::convertToCarDTO)
-                .collect(Collectors.toList()));
+    public ResponseEntity<List<CarDTO>> getAllCars(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        // La disponibilità viene dallo stato di occupazione in memoria: anche la sua versione entra nell'ETag
+        String etag = "\"cars-" + carService.getVersion() + "-" + occupancyTracker.getVersion() + "\"";
+        if (matchesETag(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+        return conditional(etag, occupancyTracker.withAvailability(carService.getAllCars()));
     }
 
-    @Cacheable("occupiedCars")
     @GetMapping("/occupied")
-    public ResponseEntity<List<BookingDTO>> getCurrentlyOccupiedCars() {
+    public ResponseEntity<List<BookingDTO>> getCurrentlyOccupiedCars(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         LocalDateTime now = LocalDateTime.now(ROME_ZONE);
-        List<Booking> occupiedCars = bookingRepository.findCurrentlyOccupiedWithCars(now);
-        return ResponseEntity.ok(occupiedCars.stream()
-                .map(this::convertToBookingDTO)
-                .collect(Collectors.toList()));
+        String etag = "\"occupied-" + bookingTimeline.versionAt(now) + "\"";
+        if (matchesETag(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+        return conditional(etag, bookingTimeline.occupiedAt(now));
     }
 
-    @Cacheable("futureBookings")
     @GetMapping("/future-bookings")
-    public ResponseEntity<List<BookingDTO>> getFutureBookedCars() {
+    public ResponseEntity<List<BookingDTO>> getFutureBookedCars(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        LocalDateTime now = LocalDateTime.now(ROME_ZONE);
+        String etag = "\"future-" + bookingTimeline.versionAt(now) + "\"";
+        if (matchesETag(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+        return conditional(etag, bookingTimeline.futureAt(now));
+    }
+
+    /**
+     * Prenotazioni in corso a pagine, lette dal database con un cursore keyset; {@code size} massimo 200.
+     */
+    @GetMapping("/occupied/page")
+    public ResponseEntity<?> getCurrentlyOccupiedPage(@RequestParam(required = false) String cursor,
+                                                      @RequestParam(defaultValue = "50") int size) {
+        try {
+            return ResponseEntity.ok(bookingListingService.occupiedPage(LocalDateTime.now(ROME_ZONE), cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @GetMapping("/future-bookings/page")
+    public ResponseEntity<?> getFutureBookingsPage(@RequestParam(required = false) String cursor,
+                                                   @RequestParam(defaultValue = "50") int size) {
+        try {
+            return ResponseEntity.ok(bookingListingService.futurePage(LocalDateTime.now(ROME_ZONE), cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Tutte le prenotazioni in corso in NDJSON, scritte man mano che arrivano dal cursore JDBC.
+     */
+    @GetMapping(value = "/occupied/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportCurrentlyOccupied() {
+        LocalDateTime now = LocalDateTime.now(ROME_ZONE);
+        // produces seleziona solo il metodo: con StreamingResponseBody il Content-Type va impostato qui
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(out -> bookingListingService.writeOccupied(now, out));
+    }
+
+    @GetMapping(value = "/future-bookings/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportFutureBookings() {
         LocalDateTime now = LocalDateTime.now(ROME_ZONE);
-        List<Booking> futureBookings = bookingRepository.findFutureBookingsWithCars(now);
-        return ResponseEntity.ok(futureBookings.stream()
-                .map(this::convertToBookingDTO)
-                .collect(Collectors.toList()));
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(out -> bookingListingService.writeFuture(now, out));
+    }
+
+    /**
+     * Auto libere nel periodo [from, to] con almeno {@code minSeats} posti. Con {@code includeBusy=true} anche quelle
+     * occupate, con il primo periodo libero di pari durata. Calcolato in memoria, senza query al database.
+     */
+    @GetMapping("/available")
+    public ResponseEntity<?> getAvailableCars(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                              @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                              @RequestParam(defaultValue = "0") int minSeats,
+                                              @RequestParam(defaultValue = "false") boolean includeBusy) {
+        try {
+            return ResponseEntity.ok(availabilityService.findAvailable(from, to, minSeats, includeBusy));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Flusso SSE con le prenotazioni create, terminate e annullate ({@code event: booking}),
+     * usato dalle pagine al posto del polling periodico.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamBookingEvents() {
+        return bookingStreamHub.subscribe();
     }
 
-    @CacheEvict(value = {"cars", "occupiedCars", "futureBookings"}, allEntries = true)
     @PostMapping("/book/{id}")
     public ResponseEntity<?> bookCar( // ResponseEntity<?> per una maggiore flessibilità nel corpo della risposta
             @PathVariable Long id,
@@ -106,16 +186,45 @@ public class CarController {
         }
     }
 
-    @CacheEvict(value = {"cars", "occupiedCars", "futureBookings"}, allEntries = true)
+    /**
+     * Prenotazioni multiple della stessa auto: elenco di periodi o ricorrenza settimanale, tutte o nessuna.
+     */
+    @PostMapping("/book/{id}/batch")
+    public ResponseEntity<?> bookCarBatch(
+            @PathVariable Long id,
+            @RequestBody BulkBookingRequest request,
+            @AuthenticationPrincipal User currentUser) {
+        try {
+            if (currentUser == null) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Utente non autenticato. Effettua il login per prenotare.");
+            }
+
+            Car car = carRepository.findById(id)
+                    .orElseThrow(() -> new ResourceNotFoundException("Auto non trovata con id: " + id));
+
+            List<Booking> bookings = bookingService.createBookings(car, request, currentUser);
+            return ResponseEntity.ok(bookings.stream().map(this::convertToBookingDTO).toList());
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            logger.warn("Tentativo di prenotazione multipla fallito: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (ResourceNotFoundException e) {
+            logger.warn("Risorsa non trovata durante la prenotazione multipla: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (Exception e) {
+            logger.error("Errore imprevisto durante la prenotazione multipla dell'auto con id {}: ", id, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Errore interno del server durante la prenotazione. Riprova più tardi.");
+        }
+    }
+
     @PostMapping("/terminate/{id}")
     public ResponseEntity<String> terminateBooking(@PathVariable Long id, @AuthenticationPrincipal User currentUser) {
-        return handleBookingStatusChange(id, "terminata", currentUser, "La tua prenotazione è stata terminata.");
+        return handleBookingStatusChange(id, "terminata", BookingEvent.Type.TERMINATED, currentUser, "La tua prenotazione è stata terminata.");
     }
 
-    @CacheEvict(value = {"cars", "occupiedCars", "futureBookings"}, allEntries = true)
     @DeleteMapping("/cancel/{id}")
     public ResponseEntity<String> cancelBooking(@PathVariable Long id, @AuthenticationPrincipal User currentUser) {
-        return handleBookingStatusChange(id, "annullata", currentUser, "La tua prenotazione è stata annullata.");
+        return handleBookingStatusChange(id, "annullata", BookingEvent.Type.CANCELLED, currentUser, "La tua prenotazione è stata annullata.");
     }
 
     // NUOVO METODO PER INVIARE EMAIL DI TEST
@@ -134,34 +243,59 @@ public class CarController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Accesso negato. Solo gli amministratori possono inviare email di test.");
         }
 
-        if (currentUser.getEmail() == null || currentUser.getEmail().isEmpty()) {
-            logger.error("L'utente admin {} non ha un indirizzo email configurato.", currentUser.getUsername());
+        // Con l'autenticazione a token il principal contiene solo id, username e ruoli
+        User recipient = currentUser.getEmail() != null ? currentUser
+                : userDetailsService.loadUserByUsername(currentUser.getUsername());
+
+        if (recipient.getEmail() == null || recipient.getEmail().isEmpty()) {
+            logger.error("L'utente admin {} non ha un indirizzo email configurato.", recipient.getUsername());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("L'utente admin non ha un indirizzo email configurato.");
         }
 
         try {
             Map<String, Object> model = new HashMap<>();
-            model.put("userName", currentUser.getFirstName() != null ? currentUser.getFirstName() : currentUser.getUsername());
+            model.put("userName", recipient.getFirstName() != null ? recipient.getFirstName() : recipient.getUsername());
             // Puoi aggiungere altri dati al modello se necessario per il template
 
             emailService.sendHtmlEmail(
-                    currentUser.getEmail(),
+                    recipient.getEmail(),
                     "CarBooking - Email di Test",
                     "test-email.html", // Nome del template che creeremo
                     model
             );
-            logger.info("Email di test inviata con successo a: {}", currentUser.getEmail());
-            return ResponseEntity.ok("Email di test inviata con successo a " + currentUser.getEmail());
+            logger.info("Email di test inviata con successo a: {}", recipient.getEmail());
+            return ResponseEntity.ok("Email di test inviata con successo a " + recipient.getEmail());
         } catch (Exception e) {
-            logger.error("Errore durante l'invio dell'email di test a {}: {}", currentUser.getEmail(), e.getMessage(), e);
+            logger.error("Errore durante l'invio dell'email di test a {}: {}", recipient.getEmail(), e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Errore durante l'invio dell'email di test: " + e.getMessage());
         }
     }
 
-    private ResponseEntity<String> handleBookingStatusChange(Long bookingId, String action, User currentUser, String emailReason) {
+    private static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.equals("*") || trimmed.equals(etag) || trimmed.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache()).build();
+    }
+
+    // no-cache (e non il no-store predefinito di Spring Security): il browser conserva la risposta ma la rivalida ogni volta
+    private static <T> ResponseEntity<T> conditional(String etag, T body) {
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(body);
+    }
+
+    private ResponseEntity<String> handleBookingStatusChange(Long bookingId, String action, BookingEvent.Type eventType, User currentUser, String emailReason) {
         try {
-            Booking booking = bookingRepository.findById(bookingId)
-                    .orElseThrow(() -> new ResourceNotFoundException("Prenotazione non trovata con id: " + bookingId));
+            Booking booking = bookingService.getBooking(bookingId);
 
             if (currentUser == null) {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Utente non autenticato.");
@@ -180,22 +314,12 @@ public class CarController {
                 return ResponseEntity.badRequest().body("La prenotazione è già stata " + action + ".");
             }
 
-            booking.setActive(false);
             // booking.setModifiedBy(currentUser.getUsername()); // Opzionale: tracciare chi ha modificato
             // booking.setModifiedAt(LocalDateTime.now(ROME_ZONE)); // Opzionale: tracciare quando
-            bookingRepository.save(booking);
-
-            // Invia email di notifica
-            try {
-                // Passiamo l'oggetto User completo per avere l'email
-                if (booking.getUser() != null && booking.getUser().getEmail() != null) { // Modificato da getUsername() a getEmail()
-                    // CORREZIONE: Chiamata al metodo corretto e con i parametri giusti
-                    emailService.sendBookingStatusChangeEmail(booking, action, emailReason);
-                } else {
-                    logger.warn("Impossibile inviare email di notifica per la prenotazione ID {}: utente o email dell'utente non disponibile.", booking.getId());
-                }
-            } catch (Exception e) {
-                 logger.error("ATTENZIONE: La prenotazione ID {} è stata {}, ma l'email di notifica non è stata inviata. Errore: {}", booking.getId(), action, e.getMessage(), e);
+            // L'email di notifica viene accodata nella outbox dalla stessa transazione
+            if (bookingService.deactivateBooking(booking, eventType, action, emailReason).isEmpty()) {
+                // Un'altra richiesta l'ha disattivata dopo la lettura qui sopra
+                return ResponseEntity.badRequest().body("La prenotazione è già stata " + action + ".");
             }
 
             return ResponseEntity.ok("Prenotazione " + action + " con successo!");
@@ -210,31 +334,10 @@ public class CarController {
     }
 
     private CarDTO convertToCarDTO(Car car) {
-        return CarDTO.builder()
-                .id(car.getId())
-                .name(car.getName())
-                .seats(car.getSeats())
-                .available(car.isAvailable()) // Questo potrebbe non essere sempre aggiornato qui, dipende dalla logica di `isAvailable`
-                .build();
+        return DtoMapper.toCarDTO(car);
     }
 
     private BookingDTO convertToBookingDTO(Booking booking) {
-        String bookedByUsername = (booking.getUser() != null) ? booking.getUser().getUsername() : "N/A";
-        CarDTO carDto = null;
-        if (booking.getCar() != null) {
-            carDto = convertToCarDTO(booking.getCar()); // Use the existing method to convert Car to CarDTO
-        }
-
-        return BookingDTO.builder()
-                .id(booking.getId())
-                .car(carDto) // Set the CarDTO object
-                .bookedByUsername(bookedByUsername)
-                .bookedAt(booking.getBookedAt())
-                .startDateTime(booking.getStartDateTime())
-                .endDateTime(booking.getEndDateTime())
-                .duration(booking.getDuration())
-                .reason(booking.getReason())
-                .active(booking.isActive())
-                .build();
+        return DtoMapper.toBookingDTO(booking);
     }
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package me.enrico.carbooking.controllers;
+
+import lombok.RequiredArgsConstructor;
+import me.enrico.carbooking.dto.ReminderRunStats;
+import me.enrico.carbooking.service.ReminderService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/admin/reminders")
+@RequiredArgsConstructor
+public class ReminderController {
+
+    private final ReminderService reminderService;
+
+    // Esito dell'ultima esecuzione su questa istanza; 204 se il task non è ancora partito
+    @GetMapping("/last-run")
+    public ResponseEntity<ReminderRunStats> getLastRun() {
+        ReminderRunStats lastRun = reminderService.getLastRun();
+        return lastRun != null ? ResponseEntity.ok(lastRun) : ResponseEntity.noContent().build();
+    }
+}
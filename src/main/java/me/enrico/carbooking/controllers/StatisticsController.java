@@ -5,9 +5,12 @@ import me.enrico.carbooking.dto.StatisticsDTO;
 import me.enrico.carbooking.service.StatisticsService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/statistics")
 @RequiredArgsConstructor
@@ -19,4 +22,21 @@ public class StatisticsController {
     public ResponseEntity<StatisticsDTO> getStatistics() {
         return ResponseEntity.ok(statisticsService.getStatistics());
     }
-}
\ No newline at end of file
+
+    // Solo per amministratori (vedi SecurityConfig)
+    @PostMapping("/rebuild")
+    public ResponseEntity<StatisticsDTO> rebuildStatistics() {
+        statisticsService.rebuild();
+        return ResponseEntity.ok(statisticsService.getStatistics());
+    }
+
+    @GetMapping("/consistency")
+    public ResponseEntity<List<String>> checkConsistency() {
+        return ResponseEntity.ok(statisticsService.checkConsistency());
+    }
+
+    @GetMapping("/sql")
+    public ResponseEntity<StatisticsDTO> getSqlAggregatedStatistics() {
+        return ResponseEntity.ok(statisticsService.computeSqlAggregatedStatistics());
+    }
+}
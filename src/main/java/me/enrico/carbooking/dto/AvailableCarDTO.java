@@ -0,0 +1,10 @@
+package me.enrico.carbooking.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Esito della ricerca di disponibilità per un'auto: {@code free} indica se il periodo richiesto è libero,
+ * {@code nextFreeStart}/{@code nextFreeEnd} il primo periodo libero della stessa durata (uguale a quello richiesto se libero).
+ */
+public record AvailableCarDTO(CarDTO car, boolean free, LocalDateTime nextFreeStart, LocalDateTime nextFreeEnd) {
+}
@@ -1,5 +1,6 @@
 package me.enrico.carbooking.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Builder;
 import lombok.Data;
 import java.time.LocalDateTime;
@@ -11,6 +12,8 @@ public class BookingDTO {
     private CarDTO car;
     // private String bookedByName; // Rimosso
     private String bookedByUsername; // Aggiunto
+    @JsonIgnore // Solo per i listener degli eventi (statistiche per utente), non esposto dalle API
+    private Long bookedByUserId;
     private LocalDateTime bookedAt;
     private LocalDateTime startDateTime;
     private LocalDateTime endDateTime;
@@ -0,0 +1,10 @@
+package me.enrico.carbooking.dto;
+
+import java.util.List;
+
+/**
+ * Una pagina di prenotazioni. {@code nextCursor} va passato come {@code cursor} per la pagina successiva;
+ * è {@code null} quando non ci sono altre righe.
+ */
+public record BookingPageDTO(List<BookingDTO> items, String nextCursor) {
+}
@@ -0,0 +1,12 @@
+package me.enrico.carbooking.dto;
+
+/**
+ * Numero di prenotazioni e somma degli id di quelle attive.
+ * Due letture uguali indicano, salvo coincidenze, che nessuna prenotazione è stata creata, terminata o annullata.
+ */
+public record BookingSignature(Long bookings, Long activeIdSum) {
+
+    public BookingSignature plus(long bookingsDelta, long activeIdDelta) {
+        return new BookingSignature(bookings + bookingsDelta, activeIdSum + activeIdDelta);
+    }
+}
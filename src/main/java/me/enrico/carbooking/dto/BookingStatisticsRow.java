@@ -0,0 +1,24 @@
+package me.enrico.carbooking.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Proiezione minima di una prenotazione con i soli campi usati dalle statistiche.
+ * L'id serve solo a riconoscere, durante una ricostruzione, gli eventi già compresi nella lettura dal database;
+ * gli aggregati sono per id di auto e utente, i nomi servono solo a mostrarli.
+ */
+public record BookingStatisticsRow(Long id, Long carId, String carName, Long userId, String username, String reason,
+                                   LocalDateTime startDateTime, int duration) {
+
+    public static BookingStatisticsRow of(BookingDTO booking) {
+        return new BookingStatisticsRow(
+                booking.getId(),
+                booking.getCar() != null ? booking.getCar().getId() : null,
+                booking.getCar() != null ? booking.getCar().getName() : null,
+                booking.getBookedByUserId(),
+                booking.getBookedByUsername(),
+                booking.getReason(),
+                booking.getStartDateTime(),
+                booking.getDuration());
+    }
+}
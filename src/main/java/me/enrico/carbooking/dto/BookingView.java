@@ -0,0 +1,31 @@
+package me.enrico.carbooking.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Proiezione piatta di una prenotazione con i soli campi di {@link BookingDTO} e {@link CarDTO}:
+ * si legge con una sola query, senza idratare le entità né caricare l'utente e i suoi ruoli.
+ */
+public record BookingView(Long id, Long carId, String carName, int carSeats, boolean carAvailable, String bookedByUsername,
+                          LocalDateTime bookedAt, LocalDateTime startDateTime, LocalDateTime endDateTime,
+                          int duration, String reason, boolean active) {
+
+    public BookingDTO toBookingDTO() {
+        return BookingDTO.builder()
+                .id(id)
+                .car(CarDTO.builder()
+                        .id(carId)
+                        .name(carName)
+                        .seats(carSeats)
+                        .available(carAvailable)
+                        .build())
+                .bookedByUsername(bookedByUsername != null ? bookedByUsername : "N/A")
+                .bookedAt(bookedAt)
+                .startDateTime(startDateTime)
+                .endDateTime(endDateTime)
+                .duration(duration)
+                .reason(reason)
+                .active(active)
+                .build();
+    }
+}
@@ -0,0 +1,43 @@
+package me.enrico.carbooking.dto;
+
+import me.enrico.carbooking.model.Booking;
+import me.enrico.carbooking.model.Car;
+
+/**
+ * Conversioni entità → DTO condivise da controller e servizi.
+ */
+public final class DtoMapper {
+
+    private DtoMapper() {
+    }
+
+    public static CarDTO toCarDTO(Car car) {
+        return CarDTO.builder()
+                .id(car.getId())
+                .name(car.getName())
+                .seats(car.getSeats())
+                .available(car.isAvailable()) // Valore della colonna, non aggiornato: lo stato reale è in CarOccupancyTracker
+                .build();
+    }
+
+    public static BookingDTO toBookingDTO(Booking booking) {
+        String bookedByUsername = (booking.getUser() != null) ? booking.getUser().getUsername() : "N/A";
+        CarDTO carDto = null;
+        if (booking.getCar() != null) {
+            carDto = toCarDTO(booking.getCar());
+        }
+
+        return BookingDTO.builder()
+                .id(booking.getId())
+                .car(carDto)
+                .bookedByUsername(bookedByUsername)
+                .bookedByUserId(booking.getUser() != null ? booking.getUser().getId() : null)
+                .bookedAt(booking.getBookedAt())
+                .startDateTime(booking.getStartDateTime())
+                .endDateTime(booking.getEndDateTime())
+                .duration(booking.getDuration())
+                .reason(booking.getReason())
+                .active(booking.isActive())
+                .build();
+    }
+}
@@ -0,0 +1,7 @@
+package me.enrico.carbooking.dto;
+
+/**
+ * Proiezione aggregata: numero di prenotazioni e ore totali per una chiave (auto, utente o motivo).
+ */
+public record GroupTotals(String key, Long bookings, Long hours) {
+}
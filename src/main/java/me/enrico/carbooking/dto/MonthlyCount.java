@@ -0,0 +1,7 @@
+package me.enrico.carbooking.dto;
+
+/**
+ * Proiezione aggregata: numero di prenotazioni che iniziano in un dato mese.
+ */
+public record MonthlyCount(Integer year, Integer month, Long bookings) {
+}
@@ -0,0 +1,7 @@
+package me.enrico.carbooking.dto;
+
+/**
+ * Proiezione aggregata: totale prenotazioni e durata media su tutta la tabella.
+ */
+public record OverallTotals(Long bookings, Double avgDuration) {
+}
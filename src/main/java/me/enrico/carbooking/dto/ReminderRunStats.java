@@ -0,0 +1,9 @@
+package me.enrico.carbooking.dto;
+
+import java.time.Duration;
+
+/**
+ * Esito di un'esecuzione del task dei promemoria.
+ */
+public record ReminderRunStats(int candidates, int sent, int failed, Duration wallTime) {
+}
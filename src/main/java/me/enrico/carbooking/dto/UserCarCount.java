@@ -0,0 +1,7 @@
+package me.enrico.carbooking.dto;
+
+/**
+ * Proiezione aggregata: numero di prenotazioni di un utente per una singola auto.
+ */
+public record UserCarCount(String username, String carName, Long bookings) {
+}
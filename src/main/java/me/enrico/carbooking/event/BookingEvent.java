@@ -0,0 +1,16 @@
+package me.enrico.carbooking.event;
+
+import me.enrico.carbooking.dto.BookingDTO;
+
+/**
+ * Pubblicato da {@code BookingService} a ogni creazione, terminazione o annullamento di una prenotazione.
+ * Contiene una fotografia della prenotazione, così i listener non devono rileggere l'entità.
+ */
+public record BookingEvent(Type type, BookingDTO booking) {
+
+    public enum Type {
+        CREATED,
+        TERMINATED,
+        CANCELLED
+    }
+}
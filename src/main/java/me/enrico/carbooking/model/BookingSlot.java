@@ -0,0 +1,24 @@
+package me.enrico.carbooking.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Intervallo occupato da una prenotazione attiva, senza le relazioni JPA.
+ * Usato dagli indici in memoria al posto dell'entità {@link Booking}.
+ */
+public record BookingSlot(Long bookingId, Long carId, LocalDateTime startDateTime, LocalDateTime endDateTime) {
+
+    public static BookingSlot of(Booking booking) {
+        return new BookingSlot(booking.getId(), booking.getCar().getId(), booking.getStartDateTime(), booking.getEndDateTime());
+    }
+
+    /**
+     * Stessa semantica di {@link Booking#overlaps}: gli estremi che si toccano sono considerati sovrapposti.
+     */
+    public boolean overlaps(LocalDateTime start, LocalDateTime end) {
+        if (startDateTime == null || endDateTime == null) {
+            return false;
+        }
+        return !(end.isBefore(startDateTime) || start.isAfter(endDateTime));
+    }
+}
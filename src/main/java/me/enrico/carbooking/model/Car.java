@@ -3,10 +3,13 @@ package me.enrico.carbooking.model;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import jakarta.persistence.*;
 import lombok.Data;
+import me.enrico.carbooking.service.CarChangeListener;
+
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+@EntityListeners(CarChangeListener.class) // Ricarica l'elenco delle auto in cache e ne cambia la versione a ogni modifica
 @Data
 public class Car {
     @Id
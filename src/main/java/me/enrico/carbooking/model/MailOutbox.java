@@ -0,0 +1,77 @@
+package me.enrico.carbooking.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Email da inviare, registrata nella stessa transazione della prenotazione (transactional outbox).
+ * Il corpo non viene salvato: il dispatcher lo genera al momento dell'invio a partire dalla prenotazione.
+ */
+@Entity
+@Table(name = "mail_outbox", indexes = {
+        @Index(name = "idx_mail_outbox_status_next_attempt", columnList = "status, next_attempt_at")
+})
+@Data
+@NoArgsConstructor
+public class MailOutbox {
+
+    public enum Type {
+        BOOKING_CONFIRMATION,
+        BOOKING_STATUS_CHANGE,
+        BOOKING_SUMMARY // Riepilogo di un inserimento multiplo; bookingId è la prima prenotazione
+    }
+
+    public enum Status {
+        PENDING,
+        SENT,
+        FAILED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Type type;
+
+    @Column(nullable = false)
+    private Long bookingId;
+
+    @Column(nullable = false)
+    private String recipient;
+
+    // Solo per BOOKING_STATUS_CHANGE
+    private String statusMessage;
+    private String reasonForChange;
+
+    // Solo per BOOKING_SUMMARY
+    private Integer bookingCount;
+    private LocalDateTime periodEnd;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private Status status = Status.PENDING;
+
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime sentAt;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    public MailOutbox(Type type, Long bookingId, String recipient, LocalDateTime now) {
+        this.type = type;
+        this.bookingId = bookingId;
+        this.recipient = recipient;
+        this.createdAt = now;
+        this.nextAttemptAt = now;
+    }
+}
@@ -3,6 +3,7 @@ package me.enrico.carbooking.model;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import me.enrico.carbooking.service.UserChangeListener;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -14,6 +15,7 @@ import java.util.stream.Collectors;
 
 @Entity
 @Table(name = "users") // È buona norma usare "users" al plurale per il nome della tabella
+@EntityListeners(UserChangeListener.class) // Invalida la cache degli utenti a ogni modifica
 @Data
 @NoArgsConstructor
 public class User implements UserDetails {
@@ -22,6 +24,10 @@ public class User implements UserDetails {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // Con la versione Hibernate aggiorna l'utente anche quando cambiano solo i ruoli, e il listener ne è avvisato
+    @Version
+    private long version;
+
     @Column(nullable = false, unique = true)
     private String username;
 
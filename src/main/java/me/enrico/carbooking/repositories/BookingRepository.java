@@ -1,23 +1,112 @@
 package me.enrico.carbooking.repositories;
 
+import me.enrico.carbooking.dto.BookingSignature;
+import me.enrico.carbooking.dto.BookingStatisticsRow;
+import me.enrico.carbooking.dto.BookingView;
+import me.enrico.carbooking.dto.GroupTotals;
+import me.enrico.carbooking.dto.MonthlyCount;
+import me.enrico.carbooking.dto.OverallTotals;
+import me.enrico.carbooking.dto.UserCarCount;
 import me.enrico.carbooking.model.Booking;
+import me.enrico.carbooking.model.BookingSlot;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import jakarta.persistence.LockModeType;
 // import org.springframework.stereotype.Repository; // Rimosso se non necessario altrove o già presente a livello di classe
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
-public interface BookingRepository extends JpaRepository<Booking, Long> {
-    @Query("SELECT b FROM Booking b JOIN FETCH b.car WHERE b.active = true AND b.startDateTime <= :now AND b.endDateTime > :now")
-    List<Booking> findCurrentlyOccupiedWithCars(@Param("now") LocalDateTime now);
+public interface BookingRepository extends JpaRepository<Booking, Long>, BookingStreamRepository {
+    // Proiezione sui soli campi di BookingDTO: una query, nessuna entità nel contesto, nessun caricamento di utenti e ruoli
+    String BOOKING_VIEW = "SELECT new me.enrico.carbooking.dto.BookingView(b.id, c.id, c.name, c.seats, c.available, u.username, " +
+                          "b.bookedAt, b.startDateTime, b.endDateTime, b.duration, b.reason, b.active) " +
+                          "FROM Booking b JOIN b.car c JOIN b.user u ";
 
-    @Query("SELECT b FROM Booking b JOIN FETCH b.car WHERE b.active = true AND b.startDateTime > :now")
-    List<Booking> findFutureBookingsWithCars(@Param("now") LocalDateTime now);
+    // Paginazione a keyset su (startDateTime, id): ogni pagina riparte dall'ultima riga della precedente,
+    // quindi il costo non cresce con il numero di pagine già lette
+    @Query(BOOKING_VIEW + "WHERE b.active = true AND b.startDateTime <= :now AND b.endDateTime > :now " +
+           "AND (b.startDateTime > :afterStart OR (b.startDateTime = :afterStart AND b.id > :afterId)) " +
+           "ORDER BY b.startDateTime, b.id")
+    List<BookingView> findCurrentlyOccupiedPage(@Param("now") LocalDateTime now, @Param("afterStart") LocalDateTime afterStart,
+                                                @Param("afterId") Long afterId, Pageable pageable);
 
-    @Query("SELECT b FROM Booking b WHERE b.car.id = :carId AND b.active = true")
-    List<Booking> findByCarIdAndActiveTrue(@Param("carId") Long carId);
-    
-    List<Booking> findByActiveTrueAndReminderSentFalseAndStartDateTimeBetween(LocalDateTime startTime, LocalDateTime endTime);
-}
\ No newline at end of file
+    @Query(BOOKING_VIEW + "WHERE b.active = true AND b.startDateTime > :now " +
+           "AND (b.startDateTime > :afterStart OR (b.startDateTime = :afterStart AND b.id > :afterId)) " +
+           "ORDER BY b.startDateTime, b.id")
+    List<BookingView> findFutureBookingsPage(@Param("now") LocalDateTime now, @Param("afterStart") LocalDateTime afterStart,
+                                             @Param("afterId") Long afterId, Pageable pageable);
+
+    @Query(BOOKING_VIEW + "WHERE b.active = true AND b.endDateTime > :now")
+    List<BookingView> findActiveViewsEndingAfter(@Param("now") LocalDateTime now);
+
+    @Query("SELECT b FROM Booking b JOIN FETCH b.car JOIN FETCH b.user WHERE b.id IN :ids")
+    List<Booking> findAllWithCarsAndUsersByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Terminazione e annullamento: lo stato si rilegge con la riga bloccata fino al commit
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM Booking b WHERE b.id = :id")
+    Optional<Booking> findByIdForUpdate(@Param("id") Long id);
+
+    // Paginazione a keyset sull'id: i lotti successivi non dipendono dall'esito dei precedenti
+    @Query("SELECT b FROM Booking b JOIN FETCH b.car JOIN FETCH b.user WHERE b.active = true AND b.reminderSent = false " +
+           "AND b.startDateTime BETWEEN :startTime AND :endTime AND b.id > :afterId ORDER BY b.id")
+    List<Booking> findReminderCandidates(@Param("startTime") LocalDateTime startTime, @Param("endTime") LocalDateTime endTime,
+                                         @Param("afterId") Long afterId, Pageable pageable);
+
+    @Modifying
+    @Query("UPDATE Booking b SET b.reminderSent = true WHERE b.id IN :ids")
+    int markReminderSent(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT CASE WHEN COUNT(b) > 0 THEN true ELSE false END FROM Booking b WHERE b.car.id = :carId AND b.active = true " +
+           "AND b.startDateTime <= :end AND b.endDateTime >= :start")
+    boolean existsActiveOverlapping(@Param("carId") Long carId, @Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+
+    @Query("SELECT new me.enrico.carbooking.model.BookingSlot(b.id, b.car.id, b.startDateTime, b.endDateTime) FROM Booking b " +
+           "WHERE b.active = true AND b.startDateTime IS NOT NULL AND b.endDateTime IS NOT NULL")
+    List<BookingSlot> findActiveSlots();
+
+    // Prenotazioni attive dell'auto che toccano l'intervallo di un inserimento multiplo: una sola query per tutto il lotto
+    @Query("SELECT new me.enrico.carbooking.model.BookingSlot(b.id, b.car.id, b.startDateTime, b.endDateTime) FROM Booking b " +
+           "WHERE b.car.id = :carId AND b.active = true AND b.startDateTime <= :to AND b.endDateTime >= :from")
+    List<BookingSlot> findActiveSlotsOverlapping(@Param("carId") Long carId, @Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    // Firma delle prenotazioni confrontata da ReadModelReconciler: cambia a ogni inserimento, terminazione o annullamento
+    @Query("SELECT new me.enrico.carbooking.dto.BookingSignature(COUNT(b), COALESCE(SUM(CASE WHEN b.active = true THEN b.id ELSE 0L END), 0L)) " +
+           "FROM Booking b")
+    BookingSignature bookingSignature();
+
+    @Query("SELECT new me.enrico.carbooking.dto.BookingStatisticsRow(b.id, c.id, c.name, u.id, u.username, b.reason, b.startDateTime, b.duration) " +
+           "FROM Booking b LEFT JOIN b.car c LEFT JOIN b.user u")
+    List<BookingStatisticsRow> findAllStatisticsRows();
+
+    // Aggregazioni calcolate dal database: restituiscono poche righe invece di un'entità per prenotazione
+    @Query("SELECT new me.enrico.carbooking.dto.GroupTotals(c.name, COUNT(b), SUM(b.duration)) " +
+           "FROM Booking b JOIN b.car c GROUP BY c.name")
+    List<GroupTotals> sumByCar();
+
+    @Query("SELECT new me.enrico.carbooking.dto.GroupTotals(u.username, COUNT(b), SUM(b.duration)) " +
+           "FROM Booking b JOIN b.user u GROUP BY u.username")
+    List<GroupTotals> sumByUser();
+
+    @Query("SELECT new me.enrico.carbooking.dto.UserCarCount(u.username, c.name, COUNT(b)) " +
+           "FROM Booking b JOIN b.user u JOIN b.car c GROUP BY u.username, c.name")
+    List<UserCarCount> countByUserAndCar();
+
+    @Query("SELECT new me.enrico.carbooking.dto.GroupTotals(b.reason, COUNT(b), SUM(b.duration)) " +
+           "FROM Booking b WHERE b.reason IS NOT NULL GROUP BY b.reason")
+    List<GroupTotals> sumByReason();
+
+    @Query("SELECT new me.enrico.carbooking.dto.MonthlyCount(YEAR(b.startDateTime), MONTH(b.startDateTime), COUNT(b)) " +
+           "FROM Booking b WHERE b.startDateTime IS NOT NULL GROUP BY YEAR(b.startDateTime), MONTH(b.startDateTime)")
+    List<MonthlyCount> countByMonth();
+
+    @Query("SELECT new me.enrico.carbooking.dto.OverallTotals(COUNT(b), AVG(b.duration)) FROM Booking b")
+    OverallTotals overallTotals();
+}
@@ -0,0 +1,17 @@
+package me.enrico.carbooking.repositories;
+
+import me.enrico.carbooking.dto.BookingView;
+
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+
+/**
+ * Letture in streaming delle prenotazioni con un cursore JDBC, per gli export NDJSON.
+ * Gli stream vanno consumati dentro una transazione e chiusi.
+ */
+public interface BookingStreamRepository {
+
+    Stream<BookingView> streamCurrentlyOccupied(LocalDateTime now);
+
+    Stream<BookingView> streamFutureBookings(LocalDateTime now);
+}
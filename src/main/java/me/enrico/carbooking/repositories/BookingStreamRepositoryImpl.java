@@ -0,0 +1,50 @@
+package me.enrico.carbooking.repositories;
+
+import jakarta.persistence.EntityManager;
+import me.enrico.carbooking.dto.BookingView;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.jpa.HibernateHints;
+
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+
+/**
+ * La fetch size dipende dal driver: MySQL Connector/J legge riga per riga solo con {@code Integer.MIN_VALUE}
+ * (con altri valori, senza {@code useCursorFetch}, carica in memoria tutto il risultato), mentre H2 e gli altri
+ * driver rifiutano i valori negativi e usano la fetch size come dimensione del blocco letto.
+ */
+public class BookingStreamRepositoryImpl implements BookingStreamRepository {
+
+    private static final int MYSQL_STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
+    private static final int DEFAULT_FETCH_SIZE = 500;
+
+    private final EntityManager entityManager;
+    private final int fetchSize;
+
+    public BookingStreamRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+        boolean mysql = entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices().getDialect() instanceof MySQLDialect; // Anche MariaDBDialect
+        this.fetchSize = mysql ? MYSQL_STREAMING_FETCH_SIZE : DEFAULT_FETCH_SIZE;
+    }
+
+    @Override
+    public Stream<BookingView> streamCurrentlyOccupied(LocalDateTime now) {
+        return stream(BookingRepository.BOOKING_VIEW
+                + "WHERE b.active = true AND b.startDateTime <= :now AND b.endDateTime > :now ORDER BY b.startDateTime, b.id", now);
+    }
+
+    @Override
+    public Stream<BookingView> streamFutureBookings(LocalDateTime now) {
+        return stream(BookingRepository.BOOKING_VIEW
+                + "WHERE b.active = true AND b.startDateTime > :now ORDER BY b.startDateTime, b.id", now);
+    }
+
+    private Stream<BookingView> stream(String query, LocalDateTime now) {
+        return entityManager.createQuery(query, BookingView.class)
+                .setParameter("now", now)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                .getResultStream();
+    }
+}
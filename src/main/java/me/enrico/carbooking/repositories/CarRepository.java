@@ -1,12 +1,20 @@
 package me.enrico.carbooking.repositories;
 
+import jakarta.persistence.LockModeType;
 import me.enrico.carbooking.model.Car;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
+import java.util.Optional;
 
 public interface CarRepository extends JpaRepository<Car, Long> {
     @Query("SELECT DISTINCT c FROM Car c LEFT JOIN FETCH c.bookings b WHERE b.active = true OR b IS NULL")
     List<Car> findAllWithActiveBookings();
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM Car c WHERE c.id = :id")
+    Optional<Car> findByIdForUpdate(@Param("id") Long id);
 }
@@ -0,0 +1,16 @@
+package me.enrico.carbooking.request;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Più prenotazioni della stessa auto in una sola richiesta: un elenco esplicito di periodi
+ * oppure una regola di ricorrenza (una delle due).
+ */
+@Data
+public class BulkBookingRequest {
+    private List<CarBookingRequest> bookings;
+    private RecurrenceRule recurrence;
+    private String reason; // Usata per le occorrenze della ricorrenza e per i periodi senza motivazione
+}
@@ -0,0 +1,22 @@
+package me.enrico.carbooking.request;
+
+import lombok.Data;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Set;
+
+/**
+ * Ricorrenza settimanale, es. "ogni giorno feriale dalle 8 alle 9 per 3 mesi":
+ * {@code daysOfWeek = [MONDAY..FRIDAY]}, {@code startTime = 08:00}, {@code endTime = 09:00},
+ * {@code fromDate} e {@code untilDate} (inclusa) a tre mesi di distanza.
+ */
+@Data
+public class RecurrenceRule {
+    private LocalDate fromDate;
+    private LocalDate untilDate;
+    private Set<DayOfWeek> daysOfWeek;
+    private LocalTime startTime;
+    private LocalTime endTime;
+}
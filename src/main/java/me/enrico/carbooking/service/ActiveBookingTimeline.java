@@ -0,0 +1,176 @@
+package me.enrico.carbooking.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import me.enrico.carbooking.dto.BookingDTO;
+import me.enrico.carbooking.dto.BookingView;
+import me.enrico.carbooking.event.BookingEvent;
+import me.enrico.carbooking.repositories.BookingRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Linea temporale in memoria delle prenotazioni attive non ancora concluse.
+ * <p>
+ * Le prenotazioni sono tenute in due array ordinati, per inizio e per fine: "in corso" e "future" si ricavano
+ * con una ricerca binaria sull'istante corrente, quindi il risultato è esatto in ogni momento senza interrogare
+ * il database e senza dipendere dalla scadenza di una cache.
+ */
+@Service
+@RequiredArgsConstructor
+public class ActiveBookingTimeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(ActiveBookingTimeline.class);
+    private static final ZoneId ROME_ZONE = ZoneId.of("Europe/Rome");
+
+    private final BookingRepository bookingRepository;
+
+    private volatile Snapshot snapshot = Snapshot.of(0, List.of());
+
+    @PostConstruct
+    public synchronized void reload() {
+        List<BookingDTO> bookings = bookingRepository.findActiveViewsEndingAfter(LocalDateTime.now(ROME_ZONE)).stream()
+                .map(BookingView::toBookingDTO)
+                .toList();
+        // Parte dall'istante corrente, così la versione non si ripete dopo un riavvio
+        snapshot = Snapshot.of(Math.max(snapshot.version() + 1, System.currentTimeMillis()), bookings);
+        logger.debug("Linea temporale prenotazioni ricaricata: {} prenotazioni attive.", bookings.size());
+    }
+
+    /**
+     * Applica solo la variazione portata dall'evento: inserisce la nuova prenotazione o rimuove quella
+     * terminata/annullata, scartando nel frattempo quelle già concluse. Le altre voci restano valide.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onBookingEvent(BookingEvent event) {
+        Snapshot updated = snapshot.withoutEndedBefore(LocalDateTime.now(ROME_ZONE));
+        BookingDTO booking = event.booking();
+        if (event.type() == BookingEvent.Type.CREATED) {
+            if (booking.getStartDateTime() != null && booking.getEndDateTime() != null) {
+                updated = updated.with(booking);
+            }
+        } else {
+            updated = updated.without(booking.getId());
+        }
+        snapshot = updated.withVersion(snapshot.version() + 1);
+    }
+
+    /**
+     * Identifica il contenuto di {@link #occupiedAt} e {@link #futureAt} all'istante indicato, senza calcolarlo:
+     * cambia quando arriva un evento e quando una prenotazione inizia o finisce. Va letto prima delle liste,
+     * così il contenuto restituito non è mai più vecchio della versione.
+     */
+    public String versionAt(LocalDateTime now) {
+        Snapshot current = snapshot;
+        return current.version()
+                + "-" + firstAfter(current.byEnd(), now, BookingDTO::getEndDateTime)
+                + "-" + firstAfter(current.byStart(), now, BookingDTO::getStartDateTime);
+    }
+
+    /**
+     * Prenotazioni in corso all'istante indicato: inizio &lt;= now e fine &gt; now.
+     */
+    public List<BookingDTO> occupiedAt(LocalDateTime now) {
+        Snapshot current = snapshot;
+        int firstNotEnded = firstAfter(current.byEnd(), now, BookingDTO::getEndDateTime);
+        List<BookingDTO> occupied = new ArrayList<>();
+        for (int i = firstNotEnded; i < current.byEnd().length; i++) {
+            BookingDTO booking = current.byEnd()[i];
+            if (!booking.getStartDateTime().isAfter(now)) {
+                occupied.add(booking);
+            }
+        }
+        return occupied;
+    }
+
+    /**
+     * Prenotazioni che iniziano dopo l'istante indicato.
+     */
+    public List<BookingDTO> futureAt(LocalDateTime now) {
+        Snapshot current = snapshot;
+        int firstFuture = firstAfter(current.byStart(), now, BookingDTO::getStartDateTime);
+        return List.of(Arrays.copyOfRange(current.byStart(), firstFuture, current.byStart().length));
+    }
+
+    /**
+     * Indice del primo elemento la cui chiave è strettamente successiva a {@code instant}.
+     */
+    private static int firstAfter(BookingDTO[] sorted, LocalDateTime instant, Function<BookingDTO, LocalDateTime> key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (key.apply(sorted[mid]).isAfter(instant)) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private record Snapshot(long version, BookingDTO[] byStart, BookingDTO[] byEnd) {
+
+        private static final Comparator<BookingDTO> BY_START =
+                Comparator.comparing(BookingDTO::getStartDateTime).thenComparing(BookingDTO::getId);
+        private static final Comparator<BookingDTO> BY_END =
+                Comparator.comparing(BookingDTO::getEndDateTime).thenComparing(BookingDTO::getId);
+
+        static Snapshot of(long version, List<BookingDTO> bookings) {
+            BookingDTO[] byStart = bookings.stream()
+                    .filter(booking -> booking.getStartDateTime() != null && booking.getEndDateTime() != null)
+                    .sorted(BY_START)
+                    .toArray(BookingDTO[]::new);
+            BookingDTO[] byEnd = byStart.clone();
+            Arrays.sort(byEnd, BY_END);
+            return new Snapshot(version, byStart, byEnd);
+        }
+
+        Snapshot withVersion(long newVersion) {
+            return new Snapshot(newVersion, byStart, byEnd);
+        }
+
+        Snapshot with(BookingDTO booking) {
+            Snapshot cleaned = without(booking.getId());
+            return new Snapshot(version, insert(cleaned.byStart, booking, BY_START), insert(cleaned.byEnd, booking, BY_END));
+        }
+
+        Snapshot without(Long bookingId) {
+            return new Snapshot(version,
+                    Arrays.stream(byStart).filter(booking -> !booking.getId().equals(bookingId)).toArray(BookingDTO[]::new),
+                    Arrays.stream(byEnd).filter(booking -> !booking.getId().equals(bookingId)).toArray(BookingDTO[]::new));
+        }
+
+        Snapshot withoutEndedBefore(LocalDateTime now) {
+            int firstNotEnded = firstAfter(byEnd, now, BookingDTO::getEndDateTime);
+            if (firstNotEnded == 0) {
+                return this;
+            }
+            return new Snapshot(version,
+                    Arrays.stream(byStart).filter(booking -> booking.getEndDateTime().isAfter(now)).toArray(BookingDTO[]::new),
+                    Arrays.copyOfRange(byEnd, firstNotEnded, byEnd.length));
+        }
+
+        private static BookingDTO[] insert(BookingDTO[] sorted, BookingDTO booking, Comparator<BookingDTO> order) {
+            int position = Arrays.binarySearch(sorted, booking, order);
+            if (position < 0) {
+                position = -position - 1;
+            }
+            BookingDTO[] result = new BookingDTO[sorted.length + 1];
+            System.arraycopy(sorted, 0, result, 0, position);
+            result[position] = booking;
+            System.arraycopy(sorted, position, result, position + 1, sorted.length - position);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package me.enrico.carbooking.service;
+
+import me.enrico.carbooking.config.AuthTokenProperties;
+import me.enrico.carbooking.model.Role;
+import me.enrico.carbooking.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Emette e verifica i token di autenticazione della modalità senza sessione.
+ * <p>
+ * Formato: {@code base64url(payload).base64url(HMAC-SHA256(payload))}, con payload
+ * {@code id:scadenza:ruoli:username}. La verifica non accede al database: il principal ricostruito
+ * contiene solo id, username e ruoli.
+ */
+@Service
+public class AuthTokenService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuthTokenService.class);
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final AuthTokenProperties properties;
+
+    public AuthTokenService(AuthTokenProperties properties) {
+        this.properties = properties;
+        byte[] secret;
+        if (properties.secret() == null || properties.secret().isBlank()) {
+            secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+            if (properties.stateless()) {
+                logger.warn("carbooking.auth.secret non impostato: chiave generata a caso, i token valgono solo per questa istanza e fino al riavvio.");
+            }
+        } else {
+            secret = properties.secret().getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+    }
+
+    public String issue(User user) {
+        long expiresAt = Instant.now().plus(properties.tokenTtl()).getEpochSecond();
+        String roles = user.getRoles().stream().map(Role::name).collect(Collectors.joining(","));
+        String payload = user.getId() + ":" + expiresAt + ":" + roles + ":" + user.getUsername();
+        byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+        return ENCODER.encodeToString(payloadBytes) + "." + ENCODER.encodeToString(sign(payloadBytes));
+    }
+
+    /**
+     * @return l'utente contenuto nel token, se la firma è valida e il token non è scaduto
+     */
+    public Optional<User> verify(String token) {
+        try {
+            int separator = token.indexOf('.');
+            if (separator < 0) {
+                return Optional.empty();
+            }
+            byte[] payloadBytes = DECODER.decode(token.substring(0, separator));
+            byte[] signature = DECODER.decode(token.substring(separator + 1));
+            if (!MessageDigest.isEqual(sign(payloadBytes), signature)) {
+                return Optional.empty();
+            }
+
+            String[] fields = new String(payloadBytes, StandardCharsets.UTF_8).split(":", 4);
+            if (fields.length != 4 || Instant.now().getEpochSecond() >= Long.parseLong(fields[1])) {
+                return Optional.empty();
+            }
+            Set<Role> roles = EnumSet.noneOf(Role.class);
+            for (String role : fields[2].split(",")) {
+                if (!role.isEmpty()) {
+                    roles.add(Role.valueOf(role));
+                }
+            }
+            User user = new User();
+            user.setId(Long.parseLong(fields[0]));
+            user.setUsername(fields[3]);
+            user.setRoles(roles);
+            return Optional.of(user);
+        } catch (IllegalArgumentException e) { // Base64, numeri o ruoli non validi
+            return Optional.empty();
+        }
+    }
+
+    public AuthTokenProperties getProperties() {
+        return properties;
+    }
+
+    private byte[] sign(byte[] payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC non disponibile", e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package me.enrico.carbooking.service;
+
+import lombok.RequiredArgsConstructor;
+import me.enrico.carbooking.dto.AvailableCarDTO;
+import me.enrico.carbooking.dto.CarDTO;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Ricerca delle auto libere in un periodo, su tutta la flotta.
+ * <p>
+ * Risponde solo da strutture in memoria: l'elenco delle auto in cache di {@link CarService} e le linee temporali
+ * di {@link BookingTimelineIndex}, che {@link BookingService} aggiorna a ogni prenotazione creata, terminata o annullata.
+ * Per ogni auto il costo è O(log n) sulle sue prenotazioni attive, senza query al database.
+ */
+@Service
+@RequiredArgsConstructor
+public class AvailabilityService {
+
+    private static final Comparator<AvailableCarDTO> FREE_FIRST = Comparator
+            .comparing((AvailableCarDTO result) -> !result.free())
+            .thenComparing(AvailableCarDTO::nextFreeStart)
+            .thenComparing(result -> result.car().getId());
+
+    private final CarService carService;
+    private final BookingTimelineIndex timelineIndex;
+    private final CarOccupancyTracker occupancyTracker;
+
+    /**
+     * Auto con almeno {@code minSeats} posti libere in [from, to]. Con {@code includeBusy} seguono anche quelle
+     * occupate, ordinate per il primo periodo libero di pari durata.
+     */
+    public List<AvailableCarDTO> findAvailable(LocalDateTime from, LocalDateTime to, int minSeats, boolean includeBusy) {
+        if (from == null || to == null || !from.isBefore(to)) {
+            throw new IllegalArgumentException("Il periodo richiesto non è valido: l'inizio deve precedere la fine.");
+        }
+        Duration length = Duration.between(from, to);
+        List<AvailableCarDTO> results = new ArrayList<>();
+        for (CarDTO car : occupancyTracker.withAvailability(carService.getAllCars())) {
+            if (car.getSeats() < minSeats) {
+                continue;
+            }
+            LocalDateTime nextFreeStart = timelineIndex.nextFreeStart(car.getId(), from, to);
+            if (!includeBusy && !nextFreeStart.equals(from)) {
+                continue;
+            }
+            results.add(new AvailableCarDTO(car, nextFreeStart.equals(from), nextFreeStart, nextFreeStart.plus(length)));
+        }
+        results.sort(FREE_FIRST);
+        return results;
+    }
+}
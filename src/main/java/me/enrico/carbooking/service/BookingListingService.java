@@ -0,0 +1,138 @@
+package me.enrico.carbooking.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.enrico.carbooking.dto.BookingDTO;
+import me.enrico.carbooking.dto.BookingPageDTO;
+import me.enrico.carbooking.dto.BookingView;
+import me.enrico.carbooking.repositories.BookingRepository;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Elenchi di prenotazioni di dimensione non limitata: a pagine con cursore (keyset su inizio e id)
+ * oppure in streaming NDJSON, una riga JSON per prenotazione letta dal cursore JDBC.
+ * In entrambi i casi la memoria usata non dipende dal numero totale di prenotazioni.
+ * Tutte le letture sono in transazioni read-only, quindi sulle repliche se configurate ({@code ReadReplicaConfig}).
+ */
+@Service
+public class BookingListingService {
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 200;
+    // Inizio della scansione per la prima pagina: precede qualunque prenotazione
+    private static final LocalDateTime FIRST_PAGE_START = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final int FLUSH_EVERY = 100;
+
+    private final BookingRepository bookingRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public BookingListingService(BookingRepository bookingRepository, ObjectMapper objectMapper,
+                                 PlatformTransactionManager transactionManager) {
+        this.bookingRepository = bookingRepository;
+        this.objectMapper = objectMapper;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    @Transactional(readOnly = true)
+    public BookingPageDTO occupiedPage(LocalDateTime now, String cursor, int size) {
+        Cursor after = Cursor.decode(cursor);
+        int pageSize = clampPageSize(size);
+        return toPage(bookingRepository.findCurrentlyOccupiedPage(now, after.startDateTime(), after.id(), PageRequest.of(0, pageSize + 1)), pageSize);
+    }
+
+    @Transactional(readOnly = true)
+    public BookingPageDTO futurePage(LocalDateTime now, String cursor, int size) {
+        Cursor after = Cursor.decode(cursor);
+        int pageSize = clampPageSize(size);
+        return toPage(bookingRepository.findFutureBookingsPage(now, after.startDateTime(), after.id(), PageRequest.of(0, pageSize + 1)), pageSize);
+    }
+
+    public void writeOccupied(LocalDateTime now, OutputStream out) {
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<BookingView> bookings = bookingRepository.streamCurrentlyOccupied(now)) {
+                writeNdjson(bookings, out);
+            }
+        });
+    }
+
+    public void writeFuture(LocalDateTime now, OutputStream out) {
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<BookingView> bookings = bookingRepository.streamFutureBookings(now)) {
+                writeNdjson(bookings, out);
+            }
+        });
+    }
+
+    private void writeNdjson(Stream<BookingView> bookings, OutputStream out) {
+        try {
+            int written = 0;
+            // Le proiezioni non entrano nel contesto di persistenza: ogni riga scritta può essere raccolta dal GC
+            for (Iterator<BookingView> iterator = bookings.iterator(); iterator.hasNext(); ) {
+                out.write(objectMapper.writeValueAsBytes(iterator.next().toBookingDTO()));
+                out.write('\n');
+                if (++written % FLUSH_EVERY == 0) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static BookingPageDTO toPage(List<BookingView> rows, int pageSize) {
+        boolean hasMore = rows.size() > pageSize;
+        List<BookingView> page = hasMore ? rows.subList(0, pageSize) : rows;
+        List<BookingDTO> items = page.stream().map(BookingView::toBookingDTO).toList();
+        String nextCursor = null;
+        if (hasMore) {
+            BookingView last = page.get(page.size() - 1);
+            nextCursor = new Cursor(last.startDateTime(), last.id()).encode();
+        }
+        return new BookingPageDTO(items, nextCursor);
+    }
+
+    private static int clampPageSize(int size) {
+        return size <= 0 ? DEFAULT_PAGE_SIZE : Math.min(size, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * Posizione dell'ultima riga restituita, codificata in modo opaco per il client.
+     */
+    private record Cursor(LocalDateTime startDateTime, Long id) {
+
+        static Cursor decode(String value) {
+            if (value == null || value.isBlank()) {
+                return new Cursor(FIRST_PAGE_START, 0L);
+            }
+            try {
+                String decoded = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+                int separator = decoded.lastIndexOf('|');
+                return new Cursor(LocalDateTime.parse(decoded.substring(0, separator)), Long.parseLong(decoded.substring(separator + 1)));
+            } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Cursore non valido: " + value, e);
+            }
+        }
+
+        String encode() {
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString((startDateTime + "|" + id).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package me.enrico.carbooking.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Lock in memoria a strisce, indicizzati per id auto.
+ * Le prenotazioni della stessa auto vengono serializzate, quelle di auto diverse (quasi sempre su strisce diverse)
+ * procedono in parallelo senza allocare un lock per ogni auto.
+ */
+@Component
+public class BookingLocks {
+
+    private static final int STRIPES = 64; // Potenza di 2, così l'indice si calcola con una maschera
+
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    public BookingLocks() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public <T> T withCarLock(Long carId, Supplier<T> action) {
+        ReentrantLock lock = lockFor(carId);
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Esegue l'azione con tutte le strisce bloccate, quindi senza prenotazioni, terminazioni o annullamenti in corso
+     * su questa istanza. Le strisce si prendono sempre nello stesso ordine, e gli altri chiamanti ne tengono una sola.
+     */
+    public <T> T withAllCarLocks(Supplier<T> action) {
+        int locked = 0;
+        try {
+            for (; locked < STRIPES; locked++) {
+                locks[locked].lock();
+            }
+            return action.get();
+        } finally {
+            while (locked > 0) {
+                locks[--locked].unlock();
+            }
+        }
+    }
+
+    private ReentrantLock lockFor(Long carId) {
+        int hash = carId.hashCode();
+        hash ^= (hash >>> 16);
+        return locks[hash & (STRIPES - 1)];
+    }
+}
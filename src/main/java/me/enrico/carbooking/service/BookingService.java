@@ -1,39 +1,96 @@
 package me.enrico.carbooking.service;
 
-import jakarta.transaction.Transactional;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
-import lombok.extern.log4j.Log4j;
+import me.enrico.carbooking.dto.DtoMapper;
+import me.enrico.carbooking.event.BookingEvent;
+import me.enrico.carbooking.exception.ResourceNotFoundException;
 import me.enrico.carbooking.model.Booking;
+import me.enrico.carbooking.model.BookingSlot;
 import me.enrico.carbooking.model.Car;
-import me.enrico.carbooking.model.User; // Aggiungi import
+import me.enrico.carbooking.model.User;
 import me.enrico.carbooking.repositories.BookingRepository;
+import me.enrico.carbooking.repositories.CarRepository;
+import me.enrico.carbooking.repositories.UserRepository;
+import me.enrico.carbooking.request.BulkBookingRequest;
 import me.enrico.carbooking.request.CarBookingRequest;
+import me.enrico.carbooking.request.RecurrenceRule;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
-import java.time.Duration;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.ZoneId; // Assicurati che sia importato
-import java.time.ZonedDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.time.temporal.ChronoUnit; // Aggiungi import
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
 public class BookingService {
 
     private final BookingRepository bookingRepository;
-    private final EmailService emailService; // Assicurati che sia iniettato
+    private final EmailService emailService;
+    private final BookingTimelineIndex timelineIndex;
+    private final CarRepository carRepository;
+    private final UserRepository userRepository;
+    private final BookingLocks bookingLocks;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
     private static final ZoneId ROME_ZONE = ZoneId.of("Europe/Rome");
-    // Aggiungi un logger se vuoi loggare errori di invio email da questo service
-    // private static final Logger logger = LoggerFactory.getLogger(BookingService.class);
+    private static final int MAX_BULK_BOOKINGS = 200;
+    // Durata totale di createBooking per esito (created, rejected, error) e di ogni fase (validate, lock, overlap, persist, mail)
+    private static final String CREATE_TIMER = "carbooking.booking.create";
+    private static final String PHASE_TIMER = "carbooking.booking.create.phase";
 
-    @Transactional
+    public Booking getBooking(Long bookingId) {
+        return bookingRepository.findById(bookingId)
+                .orElseThrow(() -> new ResourceNotFoundException("Prenotazione non trovata con id: " + bookingId));
+    }
+
+    /**
+     * Crea una prenotazione in modo sicuro rispetto alle richieste concorrenti.
+     * Le richieste per la stessa auto vengono serializzate da un lock in memoria (finché il commit non è completato)
+     * e, nel database, dal lock pessimistico sulla riga dell'auto; auto diverse restano prenotabili in parallelo.
+     * <p>
+     * Le richieste in conflitto con l'indice in memoria vengono respinte subito, senza transazione né query.
+     * Per quelle che passano decide il controllo sul database, fatto sotto il lock della riga: l'indice locale
+     * non vede le prenotazioni appena create da altre istanze.
+     */
     public Booking createBooking(Car car, CarBookingRequest request, User currentUser) { // Modificato tipo di ritorno da String a Booking
-        validateBookingRequest(request);
-        checkForOverlappingBookings(car.getId(), request);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            phase("validate").record(() -> validateBookingRequest(request));
+            rejectIfIndexedConflict(car.getId(), request);
+
+            Booking savedBooking = bookingLocks.withCarLock(car.getId(),
+                    () -> transactionTemplate.execute(status -> persistBooking(car.getId(), request, currentUser)));
+
+            outcome = "created";
+            return savedBooking; // Restituisce l'oggetto Booking salvato
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            outcome = "rejected";
+            throw e;
+        } finally {
+            sample.stop(meterRegistry.timer(CREATE_TIMER, "outcome", outcome));
+        }
+    }
+
+    private Booking persistBooking(Long carId, CarBookingRequest request, User currentUser) {
+        // Il lock sulla riga dell'auto protegge anche da altre istanze dell'applicazione
+        Car lockedCar = phase("lock").record(() -> carRepository.findByIdForUpdate(carId))
+                .orElseThrow(() -> new ResourceNotFoundException("Auto non trovata con id: " + carId));
+        phase("overlap").record(() -> checkForOverlappingBookings(carId, request));
 
         Booking booking = new Booking();
-        booking.setCar(car);
-        booking.setUser(currentUser);
+        booking.setCar(lockedCar);
+        // Riferimento gestito all'utente: il principal può essere una copia staccata o, con i token, solo id e ruoli
+        booking.setUser(userRepository.getReferenceById(currentUser.getId()));
         booking.setBookedAt(LocalDateTime.now(ROME_ZONE));
         booking.setStartDateTime(request.getStartDateTime());
         booking.setEndDateTime(request.getEndDateTime());
@@ -41,19 +98,149 @@ public class BookingService {
         booking.setReason(request.getReason());
         booking.setActive(true);
 
-        Booking savedBooking = bookingRepository.save(booking);
+        Booking savedBooking = phase("persist").record(() -> bookingRepository.save(booking));
+        timelineIndex.reserve(BookingSlot.of(savedBooking));
+        // L'email viene solo registrata nella outbox, nella stessa transazione: la invia MailDispatcher
+        phase("mail").record(() -> emailService.enqueueBookingConfirmationEmail(savedBooking));
+        eventPublisher.publishEvent(new BookingEvent(BookingEvent.Type.CREATED, DtoMapper.toBookingDTO(savedBooking)));
+        return savedBooking;
+    }
 
-        // Invia email di conferma
-        try {
-            // EmailService.sendBookingConfirmationEmail gestisce già i log per utente/email nulli
-            emailService.sendBookingConfirmationEmail(savedBooking);
-        } catch (Exception e) {
-            // Logga l'errore se l'invio dell'email fallisce, ma non interrompere il processo di prenotazione
-         //   logger.error("ATTENZIONE: Prenotazione ID {} creata, ma email di conferma non inviata. Errore: {}", savedBooking.getId(), e.getMessage(), e);
-            // L'EmailService dovrebbe già loggare i suoi errori interni.
+    /**
+     * Crea in un colpo solo più prenotazioni della stessa auto (elenco di periodi o ricorrenza settimanale).
+     * Tutte le occorrenze vengono validate prima di scrivere: se una si sovrappone a un'altra o a una prenotazione
+     * esistente non ne viene creata nessuna. Gli inserimenti partono in batch JDBC e l'utente riceve una sola
+     * email di riepilogo.
+     */
+    public List<Booking> createBookings(Car car, BulkBookingRequest request, User currentUser) {
+        List<CarBookingRequest> occurrences = expandOccurrences(request);
+        occurrences.forEach(this::validateBookingRequest);
+        occurrences.sort(Comparator.comparing(CarBookingRequest::getStartDateTime));
+        for (int i = 1; i < occurrences.size(); i++) {
+            // Stessa semantica di BookingSlot.overlaps: anche i periodi che si toccano sono in conflitto
+            if (!occurrences.get(i).getStartDateTime().isAfter(occurrences.get(i - 1).getEndDateTime())) {
+                throw new IllegalArgumentException("I periodi richiesti si sovrappongono tra loro: "
+                        + occurrences.get(i - 1).getStartDateTime() + " e " + occurrences.get(i).getStartDateTime() + ".");
+            }
+        }
+
+        // Rifiuto anticipato dall'indice in memoria; il controllo definitivo è in persistBookings
+        for (CarBookingRequest occurrence : occurrences) {
+            if (timelineIndex.findConflict(car.getId(), occurrence.getStartDateTime(), occurrence.getEndDateTime()).isPresent()) {
+                throw new IllegalStateException("L'auto è già prenotata nel periodo che inizia il " + occurrence.getStartDateTime() + ".");
+            }
+        }
+
+        return bookingLocks.withCarLock(car.getId(),
+                () -> transactionTemplate.execute(status -> persistBookings(car.getId(), occurrences, currentUser)));
+    }
+
+    private List<Booking> persistBookings(Long carId, List<CarBookingRequest> occurrences, User currentUser) {
+        Car lockedCar = carRepository.findByIdForUpdate(carId)
+                .orElseThrow(() -> new ResourceNotFoundException("Auto non trovata con id: " + carId));
+
+        // Controllo definitivo sotto il lock della riga: una sola lettura dal database per tutto l'intervallo,
+        // poi ogni occorrenza si confronta in memoria
+        CarTimeline existing = new CarTimeline();
+        bookingRepository.findActiveSlotsOverlapping(carId, occurrences.get(0).getStartDateTime(),
+                occurrences.get(occurrences.size() - 1).getEndDateTime()).forEach(existing::add);
+        for (CarBookingRequest occurrence : occurrences) {
+            if (existing.findConflict(occurrence.getStartDateTime(), occurrence.getEndDateTime()).isPresent()) {
+                throw new IllegalStateException("L'auto è già prenotata nel periodo che inizia il " + occurrence.getStartDateTime() + ".");
+            }
+        }
+
+        User user = userRepository.getReferenceById(currentUser.getId());
+        LocalDateTime bookedAt = LocalDateTime.now(ROME_ZONE);
+        List<Booking> bookings = new ArrayList<>(occurrences.size());
+        for (CarBookingRequest occurrence : occurrences) {
+            Booking booking = new Booking();
+            booking.setCar(lockedCar);
+            booking.setUser(user);
+            booking.setBookedAt(bookedAt);
+            booking.setStartDateTime(occurrence.getStartDateTime());
+            booking.setEndDateTime(occurrence.getEndDateTime());
+            booking.setDuration(calculateDuration(occurrence));
+            booking.setReason(occurrence.getReason());
+            booking.setActive(true);
+            bookings.add(booking);
         }
 
-        return savedBooking; // Restituisce l'oggetto Booking salvato
+        // Gli id arrivano dalla sequenza: Hibernate invia gli INSERT in batch al flush
+        List<Booking> savedBookings = bookingRepository.saveAll(bookings);
+        savedBookings.forEach(booking -> timelineIndex.reserve(BookingSlot.of(booking)));
+        emailService.enqueueBookingSummaryEmail(savedBookings);
+        savedBookings.forEach(booking ->
+                eventPublisher.publishEvent(new BookingEvent(BookingEvent.Type.CREATED, DtoMapper.toBookingDTO(booking))));
+        return savedBookings;
+    }
+
+    private List<CarBookingRequest> expandOccurrences(BulkBookingRequest request) {
+        boolean hasList = request.getBookings() != null && !request.getBookings().isEmpty();
+        boolean hasRecurrence = request.getRecurrence() != null;
+        if (hasList == hasRecurrence) {
+            throw new IllegalArgumentException("Specificare un elenco di prenotazioni oppure una ricorrenza.");
+        }
+
+        List<CarBookingRequest> occurrences = new ArrayList<>();
+        if (hasList) {
+            for (CarBookingRequest booking : request.getBookings()) {
+                CarBookingRequest occurrence = new CarBookingRequest();
+                occurrence.setStartDateTime(booking.getStartDateTime());
+                occurrence.setEndDateTime(booking.getEndDateTime());
+                occurrence.setReason(booking.getReason() != null ? booking.getReason() : request.getReason());
+                occurrences.add(occurrence);
+            }
+        } else {
+            RecurrenceRule rule = request.getRecurrence();
+            if (rule.getFromDate() == null || rule.getUntilDate() == null || rule.getStartTime() == null
+                    || rule.getEndTime() == null || rule.getDaysOfWeek() == null || rule.getDaysOfWeek().isEmpty()) {
+                throw new IllegalArgumentException("La ricorrenza richiede date, giorni della settimana e orari.");
+            }
+            for (LocalDate day = rule.getFromDate(); !day.isAfter(rule.getUntilDate()); day = day.plusDays(1)) {
+                if (rule.getDaysOfWeek().contains(day.getDayOfWeek())) {
+                    CarBookingRequest occurrence = new CarBookingRequest();
+                    occurrence.setStartDateTime(day.atTime(rule.getStartTime()));
+                    occurrence.setEndDateTime(day.atTime(rule.getEndTime()));
+                    occurrence.setReason(request.getReason());
+                    occurrences.add(occurrence);
+                }
+                if (occurrences.size() > MAX_BULK_BOOKINGS) {
+                    break;
+                }
+            }
+        }
+
+        if (occurrences.isEmpty()) {
+            throw new IllegalArgumentException("La richiesta non produce nessuna prenotazione.");
+        }
+        if (occurrences.size() > MAX_BULK_BOOKINGS) {
+            throw new IllegalArgumentException("Al massimo " + MAX_BULK_BOOKINGS + " prenotazioni per richiesta.");
+        }
+        return occurrences;
+    }
+
+    /**
+     * Termina o annulla una prenotazione, la rimuove dall'indice delle sovrapposizioni, accoda l'email di notifica
+     * e pubblica l'evento corrispondente.
+     * La prenotazione viene riletta con il lock sulla riga, sotto il lock in memoria della sua auto: di due richieste
+     * concorrenti (anche da istanze diverse) solo la prima la trova ancora attiva, quindi email ed evento partono una volta sola.
+     *
+     * @return la prenotazione disattivata, vuoto se era già terminata o annullata
+     */
+    public Optional<Booking> deactivateBooking(Booking booking, BookingEvent.Type type, String action, String emailReason) {
+        return bookingLocks.withCarLock(booking.getCar().getId(), () -> transactionTemplate.execute(status -> {
+            Booking locked = bookingRepository.findByIdForUpdate(booking.getId())
+                    .orElseThrow(() -> new ResourceNotFoundException("Prenotazione non trovata con id: " + booking.getId()));
+            if (!locked.isActive()) {
+                return Optional.<Booking>empty();
+            }
+            locked.setActive(false);
+            timelineIndex.release(locked.getCar().getId(), locked.getId());
+            emailService.enqueueBookingStatusChangeEmail(locked, action, emailReason);
+            eventPublisher.publishEvent(new BookingEvent(type, DtoMapper.toBookingDTO(locked)));
+            return Optional.of(locked);
+        }));
     }
 
     private void validateBookingRequest(CarBookingRequest request) {
@@ -68,15 +255,29 @@ public class BookingService {
         }
     }
 
+    /**
+     * Rifiuto anticipato dall'indice in memoria, prima di aprire la transazione. Non basta per accettare:
+     * l'indice può non contenere ancora le prenotazioni create da altre istanze.
+     */
+    private void rejectIfIndexedConflict(Long carId, CarBookingRequest request) {
+        if (timelineIndex.findConflict(carId, request.getStartDateTime(), request.getEndDateTime()).isPresent()) {
+            throw new IllegalStateException("L'auto è già prenotata per il periodo selezionato.");
+        }
+    }
+
+    /**
+     * Controllo definitivo sul database, con la riga dell'auto già bloccata.
+     */
     private void checkForOverlappingBookings(Long carId, CarBookingRequest request) {
-        List<Booking> existingBookings = bookingRepository.findByCarIdAndActiveTrue(carId);
-        for (Booking existingBooking : existingBookings) {
-            if (existingBooking.overlaps(request.getStartDateTime(), request.getEndDateTime())) {
-                throw new IllegalStateException("L'auto è già prenotata per il periodo selezionato.");
-            }
+        if (bookingRepository.existsActiveOverlapping(carId, request.getStartDateTime(), request.getEndDateTime())) {
+            throw new IllegalStateException("L'auto è già prenotata per il periodo selezionato.");
         }
     }
 
+    private Timer phase(String name) {
+        return meterRegistry.timer(PHASE_TIMER, "phase", name);
+    }
+
     private int calculateDuration(CarBookingRequest request) {
         if (request.getStartDateTime() == null || request.getEndDateTime() == null) {
             return 0;
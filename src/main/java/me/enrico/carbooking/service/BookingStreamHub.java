@@ -0,0 +1,197 @@
+package me.enrico.carbooking.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import me.enrico.carbooking.event.BookingEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Distribuisce in tempo reale (Server-Sent Events) le variazioni delle prenotazioni alle pagine aperte.
+ * <p>
+ * Una connessione inattiva costa l'{@link SseEmitter} registrato e un virtual thread fermo sulla sua coda.
+ * Ogni evento viene serializzato una sola volta; un unico thread di dispatch lo accoda, senza mai attendere,
+ * a ciascun client, il cui virtual thread lo scrive sulla connessione: ogni client riceve gli eventi in ordine
+ * e un client lento non rallenta gli altri. Chi accumula troppi eventi arretrati o resta bloccato in una scrittura
+ * oltre {@code booking.stream.write-timeout} viene scollegato; il browser si riconnette da solo (EventSource).
+ * Un heartbeat periodico tiene aperte le connessioni attraverso i proxy e scarta i client non più raggiungibili.
+ */
+@Service
+public class BookingStreamHub {
+
+    private static final Logger logger = LoggerFactory.getLogger(BookingStreamHub.class);
+    private static final String EVENT_NAME = "booking";
+    private static final Message HEARTBEAT = new Message(null);
+
+    private final ObjectMapper objectMapper;
+    private final Map<SseEmitter, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private final BlockingQueue<Message> queue;
+    private final int clientQueueCapacity;
+    private final Duration writeTimeout;
+    private final Thread dispatcher;
+
+    @Value("${booking.stream.timeout:30m}")
+    private Duration timeout;
+
+    public BookingStreamHub(ObjectMapper objectMapper,
+                            @Value("${booking.stream.queue-capacity:10000}") int queueCapacity,
+                            @Value("${booking.stream.client-queue-capacity:256}") int clientQueueCapacity,
+                            @Value("${booking.stream.write-timeout:10s}") Duration writeTimeout) {
+        this.objectMapper = objectMapper;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.clientQueueCapacity = clientQueueCapacity;
+        this.writeTimeout = writeTimeout;
+        this.dispatcher = Thread.ofVirtual().name("booking-stream-dispatcher").start(this::dispatchLoop);
+    }
+
+    /**
+     * Registra un nuovo client. Alla scadenza del timeout il browser si riconnette da solo (EventSource).
+     */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        Subscriber subscriber = new Subscriber(emitter, clientQueueCapacity);
+        emitter.onCompletion(() -> disconnect(subscriber));
+        emitter.onTimeout(() -> disconnect(subscriber));
+        emitter.onError(error -> disconnect(subscriber));
+        subscribers.put(emitter, subscriber);
+        subscriber.writer.start();
+        return emitter;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookingEvent(BookingEvent event) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        try {
+            // Chi conferma la prenotazione non deve mai attendere i client: con la coda piena l'evento si perde
+            if (!queue.offer(new Message(objectMapper.writeValueAsString(event)))) {
+                logger.warn("Coda degli eventi prenotazione piena: evento {} non distribuito.", event.type());
+            }
+        } catch (JsonProcessingException e) {
+            logger.error("Impossibile serializzare l'evento prenotazione {}: {}", event.type(), e.getMessage(), e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${booking.stream.heartbeat-interval:25000}")
+    public void heartbeat() {
+        if (!subscribers.isEmpty()) {
+            queue.offer(HEARTBEAT);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.interrupt();
+        subscribers.values().forEach(subscriber -> {
+            subscriber.writer.interrupt();
+            subscriber.emitter.complete();
+        });
+    }
+
+    private void dispatchLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                broadcast(queue.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                logger.error("Errore durante l'invio degli eventi prenotazione: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void broadcast(Message message) {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : subscribers.values()) {
+            if (subscriber.isWriteStuck(now, writeTimeout)) {
+                drop(subscriber, "scrittura bloccata da oltre " + writeTimeout.toSeconds() + " s");
+            } else if (!subscriber.pending.offer(message)) {
+                drop(subscriber, clientQueueCapacity + " eventi arretrati");
+            }
+        }
+    }
+
+    private void drop(Subscriber subscriber, String reason) {
+        logger.debug("Client dello stream prenotazioni scollegato: {}", reason);
+        disconnect(subscriber);
+        subscriber.emitter.completeWithError(new IOException("Client scollegato: " + reason));
+    }
+
+    private void disconnect(Subscriber subscriber) {
+        if (subscribers.remove(subscriber.emitter, subscriber)) {
+            subscriber.writer.interrupt();
+        }
+    }
+
+    private void writeLoop(Subscriber subscriber) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Message message = subscriber.pending.take();
+                subscriber.writeStartedAt.set(System.nanoTime());
+                try {
+                    subscriber.emitter.send(message.isHeartbeat()
+                            ? SseEmitter.event().comment("ping")
+                            : SseEmitter.event().name(EVENT_NAME).data(message.json(), MediaType.APPLICATION_JSON));
+                } finally {
+                    subscriber.writeStartedAt.set(0);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | IllegalStateException e) {
+            // Client disconnesso: completeWithError rimuove l'emitter tramite onError/onCompletion
+            disconnect(subscriber);
+            subscriber.emitter.completeWithError(e);
+        }
+    }
+
+    /**
+     * Un client connesso: la sua coda di eventi da scrivere e il virtual thread che la svuota.
+     */
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+        private final BlockingQueue<Message> pending;
+        private final Thread writer;
+        // Istante (System.nanoTime) di inizio della scrittura in corso, 0 se il client è in attesa di eventi
+        private final AtomicLong writeStartedAt = new AtomicLong();
+
+        Subscriber(SseEmitter emitter, int capacity) {
+            this.emitter = emitter;
+            this.pending = new ArrayBlockingQueue<>(capacity);
+            this.writer = Thread.ofVirtual().name("booking-stream-writer").unstarted(() -> writeLoop(this));
+        }
+
+        boolean isWriteStuck(long now, Duration limit) {
+            long startedAt = writeStartedAt.get();
+            return startedAt != 0 && now - startedAt > limit.toNanos();
+        }
+    }
+
+    private record Message(String json) {
+
+        boolean isHeartbeat() {
+            return json == null;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package me.enrico.carbooking.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import me.enrico.carbooking.model.BookingSlot;
+import me.enrico.carbooking.repositories.BookingRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Indice in memoria delle prenotazioni attive, una {@link CarTimeline} per auto.
+ * Viene caricato dal database all'avvio e mantenuto allineato da {@link BookingService}.
+ * Serve la ricerca delle auto disponibili e respinge senza query le prenotazioni in conflitto;
+ * l'accettazione resta al controllo sul database, sotto il lock della riga dell'auto.
+ */
+@Service
+@RequiredArgsConstructor
+public class BookingTimelineIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(BookingTimelineIndex.class);
+
+    private final BookingRepository bookingRepository;
+    private final Map<Long, CarTimeline> timelines = new ConcurrentHashMap<>();
+
+    /**
+     * Carica l'indice dal database. Richiamato anche da {@link ReadModelReconciler}: ogni auto passa dalla vecchia
+     * alla nuova linea temporale in un colpo solo, senza che le ricerche concorrenti la vedano vuota.
+     */
+    @PostConstruct
+    public void warmUp() {
+        List<BookingSlot> activeSlots = bookingRepository.findActiveSlots();
+        Map<Long, CarTimeline> loaded = new HashMap<>();
+        activeSlots.forEach(slot -> loaded.computeIfAbsent(slot.carId(), id -> new CarTimeline()).add(slot));
+        timelines.putAll(loaded);
+        timelines.keySet().retainAll(loaded.keySet());
+        logger.info("Indice prenotazioni caricato: {} prenotazioni attive su {} auto.", activeSlots.size(), timelines.size());
+    }
+
+    public Optional<BookingSlot> findConflict(Long carId, LocalDateTime start, LocalDateTime end) {
+        CarTimeline timeline = timelines.get(carId);
+        return timeline != null ? timeline.findConflict(start, end) : Optional.empty();
+    }
+
+    /**
+     * Primo istante, da {@code start} in avanti, in cui l'auto è libera per un periodo lungo quanto [start, end].
+     * Coincide con {@code start} se il periodo richiesto è già libero.
+     */
+    public LocalDateTime nextFreeStart(Long carId, LocalDateTime start, LocalDateTime end) {
+        CarTimeline timeline = timelines.get(carId);
+        return timeline != null ? timeline.nextFreeStart(start, end) : start;
+    }
+
+    /**
+     * Aggiunge subito lo slot all'indice, così le richieste successive lo vedono già prima del commit.
+     * Se la transazione corrente fallisce lo slot viene rimosso.
+     */
+    public void reserve(BookingSlot slot) {
+        timelineFor(slot.carId()).add(slot);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        timelineFor(slot.carId()).remove(slot.bookingId());
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Rimuove lo slot di una prenotazione terminata o annullata, dopo il commit se c'è una transazione attiva.
+     */
+    public void release(Long carId, Long bookingId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    timelineFor(carId).remove(bookingId);
+                }
+            });
+        } else {
+            timelineFor(carId).remove(bookingId);
+        }
+    }
+
+    private CarTimeline timelineFor(Long carId) {
+        return timelines.computeIfAbsent(carId, id -> new CarTimeline());
+    }
+}
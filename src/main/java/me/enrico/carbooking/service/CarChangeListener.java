@@ -0,0 +1,31 @@
+package me.enrico.carbooking.service;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import me.enrico.carbooking.model.Car;
+import org.springframework.context.annotation.Lazy;
+
+/**
+ * Entity listener di {@link Car}. Hibernate crea una propria istanza del listener, distinta dal singleton Spring:
+ * la modifica viene quindi inoltrata al {@link CarService} dell'applicazione, l'unico che ne tiene la versione,
+ * e allo {@link StatisticsService}, che mostra le statistiche con il nome attuale dell'auto.
+ */
+public class CarChangeListener {
+
+    private final CarService carService;
+    private final StatisticsService statisticsService;
+
+    public CarChangeListener(@Lazy CarService carService, @Lazy StatisticsService statisticsService) { // Lazy: istanziato durante l'avvio di JPA
+        this.carService = carService;
+        this.statisticsService = statisticsService;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onCarChanged(Car car) {
+        carService.onCarChanged(car);
+        statisticsService.onCarChanged(car);
+    }
+}
@@ -0,0 +1,205 @@
+package me.enrico.carbooking.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import me.enrico.carbooking.dto.BookingDTO;
+import me.enrico.carbooking.dto.CarDTO;
+import me.enrico.carbooking.event.BookingEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stato di occupazione delle auto in memoria, al posto della colonna {@code Car.available} che nessuno aggiorna.
+ * <p>
+ * Per ogni prenotazione attiva vengono messi in una {@link DelayQueue} due passaggi, all'inizio e alla fine:
+ * un thread dedicato li preleva esattamente alla scadenza e segna l'auto come occupata o di nuovo libera.
+ * Le prenotazioni create, terminate e annullate arrivano dagli eventi di {@link BookingService}, quindi
+ * la lettura dello stato non esegue query.
+ */
+@Service
+public class CarOccupancyTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(CarOccupancyTracker.class);
+    private static final ZoneId ROME_ZONE = ZoneId.of("Europe/Rome");
+
+    private final ActiveBookingTimeline bookingTimeline;
+    private final DelayQueue<Transition> transitions = new DelayQueue<>();
+    // Prenotazioni attive non ancora concluse (id prenotazione → id auto) e, per auto, quelle in corso
+    private final Map<Long, Long> scheduledBookings = new HashMap<>();
+    private final Map<Long, Set<Long>> inProgressByCar = new HashMap<>();
+    // Parte dall'istante di avvio, così la versione non si ripete dopo un riavvio
+    private final AtomicLong version = new AtomicLong(System.currentTimeMillis());
+    private final Thread dispatcher;
+
+    private volatile Set<Long> occupiedCars = Set.of();
+
+    public CarOccupancyTracker(ActiveBookingTimeline bookingTimeline) {
+        this.bookingTimeline = bookingTimeline;
+        this.dispatcher = Thread.ofVirtual().name("car-occupancy-dispatcher").start(this::dispatchLoop);
+    }
+
+    /**
+     * Parte dalla linea temporale già caricata, senza rileggere le prenotazioni dal database.
+     * Richiamato anche da {@link ReadModelReconciler}: lo stato precedente viene sostituito, e le prenotazioni
+     * già in corso occupano subito l'auto invece di attendere il primo giro del dispatcher.
+     */
+    @PostConstruct
+    public synchronized void warmUp() {
+        LocalDateTime now = LocalDateTime.now(ROME_ZONE);
+        List<BookingDTO> occupied = bookingTimeline.occupiedAt(now);
+        List<BookingDTO> future = bookingTimeline.futureAt(now);
+        scheduledBookings.clear();
+        transitions.clear();
+        inProgressByCar.clear();
+        for (BookingDTO booking : occupied) {
+            schedule(booking);
+            if (scheduledBookings.containsKey(booking.getId())) {
+                inProgressByCar.computeIfAbsent(booking.getCar().getId(), id -> new HashSet<>()).add(booking.getId());
+            }
+        }
+        future.forEach(this::schedule);
+        publishOccupiedCars();
+        logger.info("Stato di occupazione caricato: {} prenotazioni in corso, {} future.", occupied.size(), future.size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookingEvent(BookingEvent event) {
+        if (event.type() == BookingEvent.Type.CREATED) {
+            schedule(event.booking());
+        } else {
+            unschedule(event.booking().getId());
+        }
+    }
+
+    public boolean isOccupied(Long carId) {
+        return occupiedCars.contains(carId);
+    }
+
+    /**
+     * Cambia ogni volta che almeno un'auto diventa occupata o torna libera.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Copia delle auto con {@code available} calcolato dallo stato di occupazione corrente.
+     * Gli oggetti ricevuti (in cache) non vengono modificati.
+     */
+    public List<CarDTO> withAvailability(List<CarDTO> cars) {
+        Set<Long> occupied = occupiedCars;
+        return cars.stream()
+                .map(car -> CarDTO.builder()
+                        .id(car.getId())
+                        .name(car.getName())
+                        .seats(car.getSeats())
+                        .available(!occupied.contains(car.getId()))
+                        .build())
+                .toList();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.interrupt();
+    }
+
+    private synchronized void schedule(BookingDTO booking) {
+        if (booking.getCar() == null || booking.getStartDateTime() == null || booking.getEndDateTime() == null) {
+            return;
+        }
+        scheduledBookings.put(booking.getId(), booking.getCar().getId());
+        // Un inizio già passato scade subito: la prenotazione in corso viene applicata al primo giro del dispatcher
+        transitions.add(new Transition(toEpochMillis(booking.getStartDateTime()), Transition.Kind.START, booking.getId()));
+        transitions.add(new Transition(toEpochMillis(booking.getEndDateTime()), Transition.Kind.END, booking.getId()));
+    }
+
+    private synchronized void unschedule(Long bookingId) {
+        Long carId = scheduledBookings.remove(bookingId);
+        transitions.removeIf(transition -> transition.bookingId().equals(bookingId));
+        if (carId != null) {
+            leave(carId, bookingId);
+        }
+    }
+
+    private synchronized void apply(Transition transition) {
+        Long carId = scheduledBookings.get(transition.bookingId());
+        if (carId == null) {
+            return; // Prenotazione annullata o terminata nel frattempo
+        }
+        if (transition.kind() == Transition.Kind.START) {
+            Set<Long> inProgress = inProgressByCar.computeIfAbsent(carId, id -> new HashSet<>());
+            if (inProgress.add(transition.bookingId()) && inProgress.size() == 1) {
+                publishOccupiedCars();
+            }
+        } else {
+            scheduledBookings.remove(transition.bookingId());
+            leave(carId, transition.bookingId());
+        }
+    }
+
+    private void leave(Long carId, Long bookingId) {
+        Set<Long> inProgress = inProgressByCar.get(carId);
+        if (inProgress != null && inProgress.remove(bookingId) && inProgress.isEmpty()) {
+            inProgressByCar.remove(carId);
+            publishOccupiedCars();
+        }
+    }
+
+    private void publishOccupiedCars() {
+        occupiedCars = Set.copyOf(inProgressByCar.keySet());
+        version.incrementAndGet();
+    }
+
+    private void dispatchLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                apply(transitions.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                logger.error("Errore durante l'aggiornamento dello stato di occupazione: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private static long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ROME_ZONE).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Inizio o fine di una prenotazione. A parità di istante l'inizio precede la fine.
+     */
+    private record Transition(long epochMillis, Kind kind, Long bookingId) implements Delayed {
+
+        enum Kind {
+            START,
+            END
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(epochMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            Transition that = (Transition) other;
+            int byTime = Long.compare(epochMillis, that.epochMillis);
+            return byTime != 0 ? byTime : kind.compareTo(that.kind);
+        }
+    }
+}
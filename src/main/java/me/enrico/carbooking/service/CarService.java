@@ -0,0 +1,82 @@
+package me.enrico.carbooking.service;
+
+import me.enrico.carbooking.dto.CarDTO;
+import me.enrico.carbooking.dto.DtoMapper;
+import me.enrico.carbooking.model.Car;
+import me.enrico.carbooking.repositories.CarRepository;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Elenco delle auto, in cache, con un numero di versione che cambia a ogni modifica di un'auto.
+ * Le modifiche arrivano da {@link CarChangeListener}: dopo il commit svuota la cache e solo dopo incrementa la versione,
+ * così una versione letta non corrisponde mai a un elenco più vecchio.
+ * <p>
+ * L'elenco si legge dalle repliche, se configurate. Dopo una modifica la cache viene ricaricata subito dal primario:
+ * una replica in ritardo non deve finire in cache con l'elenco precedente alla modifica.
+ */
+@Service
+public class CarService {
+
+    public static final String CACHE_NAME = "cars";
+
+    private final CarRepository carRepository;
+    private final CacheManager cacheManager;
+    // Parte dall'istante di avvio, così la versione non si ripete dopo un riavvio
+    private final AtomicLong version = new AtomicLong(System.currentTimeMillis());
+
+    public CarService(CarRepository carRepository, CacheManager cacheManager) {
+        this.carRepository = carRepository;
+        this.cacheManager = cacheManager;
+    }
+
+    @Cacheable(CACHE_NAME)
+    @Transactional(readOnly = true)
+    public List<CarDTO> getAllCars() {
+        return loadCars();
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    public void onCarChanged(Car car) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    // Le risorse della transazione appena confermata sono ancora legate al thread: si legge dal primario
+                    carsChanged(loadCars());
+                }
+            });
+        } else {
+            carsChanged(null);
+        }
+    }
+
+    private List<CarDTO> loadCars() {
+        return carRepository.findAll().stream()
+                .map(DtoMapper::toCarDTO)
+                .toList();
+    }
+
+    private void carsChanged(List<CarDTO> cars) {
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        if (cache != null) {
+            cache.clear();
+            if (cars != null) {
+                cache.put(SimpleKey.EMPTY, cars);
+            }
+        }
+        version.incrementAndGet();
+    }
+}
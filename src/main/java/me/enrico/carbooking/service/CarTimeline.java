@@ -0,0 +1,146 @@
+package me.enrico.carbooking.service;
+
+import me.enrico.carbooking.model.BookingSlot;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Prenotazioni attive di una singola auto, raggruppate in blocchi ordinati per inizio.
+ * <p>
+ * Un blocco è l'unione di slot sovrapposti: di norma contiene una sola prenotazione, perché {@link BookingService}
+ * non ne crea di sovrapposte, ma le righe scritte prima del lock per auto possono esserlo. I blocchi invece non si
+ * sovrappongono mai, quindi per cercare un conflitto con [start, end] bastano due ricerche O(log n): l'ultimo blocco
+ * che inizia entro {@code start}, l'unico che può coprirlo, e il primo che inizia dopo {@code start} ma non oltre
+ * {@code end}. Il costo non dipende dalla durata delle prenotazioni né da quelle nascoste dietro una più lunga.
+ */
+public class CarTimeline {
+
+    private static final Comparator<BookingSlot> BY_START =
+            Comparator.comparing(BookingSlot::startDateTime).thenComparing(BookingSlot::bookingId);
+
+    // Gli estremi che si toccano sono sovrapposti: uno slot libero inizia almeno un minuto dopo la fine del precedente
+    private static final Duration MIN_GAP = Duration.ofMinutes(1);
+
+    private final TreeMap<LocalDateTime, Block> blocks = new TreeMap<>();
+    private final Map<Long, Block> blocksById = new HashMap<>();
+
+    public synchronized void add(BookingSlot slot) {
+        remove(slot.bookingId());
+        insert(slot);
+    }
+
+    public synchronized BookingSlot remove(Long bookingId) {
+        Block block = blocksById.remove(bookingId);
+        if (block == null) {
+            return null;
+        }
+        blocks.remove(block.start);
+        BookingSlot removed = null;
+        for (BookingSlot slot : block.slots) {
+            if (slot.bookingId().equals(bookingId)) {
+                removed = slot;
+            } else {
+                // Senza lo slot rimosso gli altri del blocco possono non sovrapporsi più: si raggruppano di nuovo
+                blocksById.remove(slot.bookingId());
+                insert(slot);
+            }
+        }
+        return removed;
+    }
+
+    public synchronized Optional<BookingSlot> findConflict(LocalDateTime start, LocalDateTime end) {
+        Map.Entry<LocalDateTime, Block> before = blocks.floorEntry(start);
+        if (before != null && before.getValue().overlaps(start, end)) {
+            return before.getValue().firstOverlapping(start, end);
+        }
+        // Inizia dopo start: è in conflitto se non inizia oltre end (gli estremi che si toccano sono sovrapposti)
+        Map.Entry<LocalDateTime, Block> after = blocks.higherEntry(start);
+        if (after != null && !after.getKey().isAfter(end)) {
+            return after.getValue().firstOverlapping(start, end);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Primo istante, a partire da {@code start}, da cui l'auto resta libera per tutta la durata di [start, end].
+     * Ogni conflitto sposta la ricerca subito dopo la fine del suo blocco: il costo è O(k log n), con k i blocchi
+     * consecutivi da scavalcare.
+     */
+    public synchronized LocalDateTime nextFreeStart(LocalDateTime start, LocalDateTime end) {
+        Duration length = Duration.between(start, end);
+        LocalDateTime candidate = start;
+        Optional<BookingSlot> conflict;
+        while ((conflict = findConflict(candidate, candidate.plus(length))).isPresent()) {
+            candidate = blocksById.get(conflict.get().bookingId()).end.plus(MIN_GAP);
+        }
+        return candidate;
+    }
+
+    public synchronized int size() {
+        return blocksById.size();
+    }
+
+    /**
+     * Inserisce lo slot unendolo ai blocchi con cui si sovrappone: quello che inizia entro il suo inizio
+     * e quelli che iniziano prima della sua fine.
+     */
+    private void insert(BookingSlot slot) {
+        Block merged = new Block(slot);
+        Map.Entry<LocalDateTime, Block> before = blocks.floorEntry(slot.startDateTime());
+        if (before != null && before.getValue().overlaps(slot.startDateTime(), slot.endDateTime())) {
+            merged.absorb(blocks.remove(before.getKey()));
+        }
+        Map.Entry<LocalDateTime, Block> next;
+        while ((next = blocks.ceilingEntry(slot.startDateTime())) != null && !next.getKey().isAfter(merged.end)) {
+            merged.absorb(blocks.remove(next.getKey()));
+        }
+        merged.slots.sort(BY_START);
+        blocks.put(merged.start, merged);
+        merged.slots.forEach(member -> blocksById.put(member.bookingId(), merged));
+    }
+
+    /**
+     * Intervallo [start, end] coperto senza interruzioni dai suoi slot.
+     */
+    private static final class Block {
+
+        private LocalDateTime start;
+        private LocalDateTime end;
+        private final List<BookingSlot> slots = new ArrayList<>(1);
+
+        private Block(BookingSlot slot) {
+            this.start = slot.startDateTime();
+            this.end = slot.endDateTime();
+            this.slots.add(slot);
+        }
+
+        private void absorb(Block other) {
+            if (other.start.isBefore(start)) {
+                start = other.start;
+            }
+            if (other.end.isAfter(end)) {
+                end = other.end;
+            }
+            slots.addAll(other.slots);
+        }
+
+        private boolean overlaps(LocalDateTime from, LocalDateTime to) {
+            return !(to.isBefore(start) || from.isAfter(end));
+        }
+
+        /**
+         * Il blocco copre [from, to] almeno in parte, quindi almeno uno dei suoi slot si sovrappone.
+         */
+        private Optional<BookingSlot> firstOverlapping(LocalDateTime from, LocalDateTime to) {
+            return slots.stream().filter(slot -> slot.overlaps(from, to)).findFirst();
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package me.enrico.carbooking.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import me.enrico.carbooking.model.Booking;
+import me.enrico.carbooking.model.MailOutbox;
 import me.enrico.carbooking.model.User;
+import me.enrico.carbooking.repositories.MailOutboxRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
@@ -15,13 +18,19 @@ import org.thymeleaf.spring6.SpringTemplateEngine;
 
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
-import java.util.HashMap;
+import java.io.UnsupportedEncodingException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
 import java.util.Map;
 
 @Service
 public class EmailService {
 
     private static final Logger logger = LoggerFactory.getLogger(EmailService.class);
+    private static final ZoneId ROME_ZONE = ZoneId.of("Europe/Rome");
+    // Latenza degli invii SMTP, con tag channel (direct, reminder, outbox) e outcome (success, failure)
+    public static final String SEND_TIMER = "carbooking.mail.send";
 
     @Autowired
     private JavaMailSender mailSender;
@@ -29,6 +38,15 @@ public class EmailService {
     @Autowired
     private SpringTemplateEngine thymeleafTemplateEngine;
 
+    @Autowired
+    private MailOutboxRepository mailOutboxRepository;
+
+    @Autowired
+    private MailTemplateRenderer mailTemplateRenderer;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Value("${spring.mail.username}")
     private String fromEmail;
 
@@ -46,22 +64,7 @@ public class EmailService {
             return;
         }
         try {
-            Context thymeleafContext = new Context();
-            templateModel.put("subject", subject);
-            thymeleafContext.setVariables(templateModel);
-
-            String htmlBody = thymeleafTemplateEngine.process("mail/" + templateName, thymeleafContext);
-
-            MimeMessage mimeMessage = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true, "UTF-8");
-
-            // Imposta il mittente con nome visualizzato
-            helper.setFrom(fromEmail, FROM_NAME);
-            helper.setTo(to);
-            helper.setSubject(subject);
-            helper.setText(htmlBody, true);
-
-            mailSender.send(mimeMessage);
+            send("direct", createHtmlMessage(to, subject, templateName, templateModel));
             logger.info("Email HTML '{}' inviata a: {}", subject, to);
         } catch (MessagingException e) {
             logger.error("Errore durante la creazione o l'invio dell'email HTML a {}: {}", to, e.getMessage(), e);
@@ -71,72 +74,147 @@ public class EmailService {
     }
 
     /**
-     * Invia un'email di conferma prenotazione.
+     * Genera il messaggio HTML senza inviarlo, così il chiamante può spedirne più di uno sulla stessa connessione SMTP.
      */
-    public void sendBookingConfirmationEmail(Booking booking) {
+    public MimeMessage createHtmlMessage(String to, String subject, String templateName, Map<String, Object> templateModel)
+            throws MessagingException, UnsupportedEncodingException {
+        Context thymeleafContext = new Context();
+        templateModel.put("subject", subject);
+        thymeleafContext.setVariables(templateModel);
+
+        String htmlBody = thymeleafTemplateEngine.process("mail/" + templateName, thymeleafContext);
+
+        MimeMessage mimeMessage = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true, "UTF-8");
+
+        // Imposta il mittente con nome visualizzato
+        helper.setFrom(fromEmail, FROM_NAME);
+        helper.setTo(to);
+        helper.setSubject(subject);
+        helper.setText(htmlBody, true);
+        return mimeMessage;
+    }
+
+    /**
+     * Registra nella outbox l'email di conferma prenotazione; verrà inviata da {@link MailDispatcher}.
+     * Va chiamato nella transazione che crea la prenotazione.
+     */
+    public void enqueueBookingConfirmationEmail(Booking booking) {
         User user = booking.getUser();
         if (user == null || user.getEmail() == null) {
-            logger.error("Impossibile inviare email di conferma: utente o email utente non specificati per la prenotazione ID {}", booking.getId());
+            logger.error("Impossibile accodare email di conferma: utente o email utente non specificati per la prenotazione ID {}", booking.getId());
             return;
         }
+        mailOutboxRepository.save(new MailOutbox(MailOutbox.Type.BOOKING_CONFIRMATION, booking.getId(), user.getEmail(), LocalDateTime.now(ROME_ZONE)));
+    }
 
-        Map<String, Object> model = new HashMap<>();
-        model.put("userName", getUserName(user));
-        model.put("bookingId", booking.getId());
-        model.put("carName", booking.getCar().getName());
-        model.put("startTime", booking.getStartDateTime());
-        model.put("endTime", booking.getEndDateTime());
-        model.put("reason", booking.getReason());
-
-        sendHtmlEmail(user.getEmail(),
-                "Conferma Prenotazione Auto",
-                "booking-confirmation.html",
-                model);
+    /**
+     * Registra nella outbox un'unica email di riepilogo per un inserimento multiplo.
+     * Le prenotazioni devono essere ordinate per inizio.
+     */
+    public void enqueueBookingSummaryEmail(List<Booking> bookings) {
+        Booking first = bookings.get(0);
+        User user = first.getUser();
+        if (user == null || user.getEmail() == null) {
+            logger.error("Impossibile accodare email di riepilogo: utente o email utente non specificati per la prenotazione ID {}", first.getId());
+            return;
+        }
+        MailOutbox mail = new MailOutbox(MailOutbox.Type.BOOKING_SUMMARY, first.getId(), user.getEmail(), LocalDateTime.now(ROME_ZONE));
+        mail.setBookingCount(bookings.size());
+        mail.setPeriodEnd(bookings.get(bookings.size() - 1).getEndDateTime());
+        mailOutboxRepository.save(mail);
     }
 
     /**
-     * Invia un'email di notifica cancellazione/terminazione.
+     * Registra nella outbox l'email di notifica cancellazione/terminazione.
      */
-    public void sendBookingStatusChangeEmail(Booking booking, String statusMessage, String reasonForChange) {
+    public void enqueueBookingStatusChangeEmail(Booking booking, String statusMessage, String reasonForChange) {
         User user = booking.getUser();
         if (user == null || user.getEmail() == null) {
-            logger.error("Impossibile inviare email di modifica stato: utente o email utente non specificati per la prenotazione ID {}", booking.getId());
+            logger.error("Impossibile accodare email di modifica stato: utente o email utente non specificati per la prenotazione ID {}", booking.getId());
             return;
         }
+        MailOutbox mail = new MailOutbox(MailOutbox.Type.BOOKING_STATUS_CHANGE, booking.getId(), user.getEmail(), LocalDateTime.now(ROME_ZONE));
+        mail.setStatusMessage(statusMessage);
+        mail.setReasonForChange(reasonForChange);
+        mailOutboxRepository.save(mail);
+    }
 
-        Map<String, Object> model = new HashMap<>();
-        model.put("userName", getUserName(user));
-        model.put("bookingId", booking.getId());
-        model.put("carName", booking.getCar().getName());
-        model.put("status", statusMessage);
-        model.put("reasonForChange", reasonForChange);
-
-        sendHtmlEmail(user.getEmail(),
-                "Modifica Prenotazione Auto",
-                "booking-cancellation.html",
-                model);
+    /**
+     * Genera il messaggio corrispondente a una voce della outbox.
+     */
+    public MimeMessage createOutboxMessage(MailOutbox mail, Booking booking) throws MessagingException, UnsupportedEncodingException {
+        return switch (mail.getType()) {
+            case BOOKING_CONFIRMATION -> createBookingMessage(mail.getRecipient(),
+                    "booking-confirmation.html",
+                    bookingConfirmationModel(booking));
+            case BOOKING_STATUS_CHANGE -> createBookingMessage(mail.getRecipient(),
+                    "booking-cancellation.html",
+                    bookingStatusChangeModel(booking, mail.getStatusMessage(), mail.getReasonForChange()));
+            case BOOKING_SUMMARY -> createBookingMessage(mail.getRecipient(),
+                    "booking-summary.html",
+                    bookingSummaryModel(booking, mail.getBookingCount(), mail.getPeriodEnd()));
+        };
     }
 
     /**
-     * Invia un'email di promemoria per una prenotazione imminente.
+     * Invia subito il promemoria di una prenotazione imminente, senza passare dalla outbox: lo usa {@link ReminderService},
+     * che lascia i promemoria non inviati al giro successivo. Gli errori di invio vengono propagati al chiamante.
      */
-    public void sendBookingReminderEmail(Booking booking) {
+    public void deliverBookingReminderEmail(Booking booking) throws MessagingException, UnsupportedEncodingException {
         User user = booking.getUser();
-        if (user == null || user.getEmail() == null) {
-            logger.error("Impossibile inviare email di promemoria: utente o email utente non specificati per la prenotazione ID {}", booking.getId());
-            return;
+        if (user == null || user.getEmail() == null || !user.getEmail().contains("@")) {
+            throw new IllegalArgumentException("Email utente mancante o non valida per la prenotazione ID " + booking.getId());
         }
+        send("reminder", createBookingMessage(user.getEmail(), "booking-reminder.html", bookingReminderModel(booking)));
+    }
+
+    /**
+     * Spedisce i messaggi (più di uno sulla stessa connessione SMTP) e ne misura la latenza.
+     * Gli errori vengono contati nel timer con {@code outcome=failure} e rilanciati al chiamante.
+     */
+    public void send(String channel, MimeMessage... messages) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "failure";
+        try {
+            mailSender.send(messages);
+            outcome = "success";
+        } finally {
+            sample.stop(meterRegistry.timer(SEND_TIMER, "channel", channel, "outcome", outcome));
+        }
+    }
+
+    /**
+     * Genera un'email di prenotazione dai template precompilati di {@link MailTemplateRenderer}.
+     */
+    public MimeMessage createBookingMessage(String to, String templateName, MailModel model)
+            throws MessagingException, UnsupportedEncodingException {
+        MimeMessage mimeMessage = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, false, "UTF-8");
+        helper.setFrom(fromEmail, FROM_NAME);
+        helper.setTo(to);
+        helper.setSubject(model.subject());
+        helper.setText(mailTemplateRenderer.render(templateName, model), true);
+        return mimeMessage;
+    }
+
+    private MailModel bookingConfirmationModel(Booking booking) {
+        return new MailModel("Conferma Prenotazione Auto", getUserName(booking.getUser()), booking.getCar().getName(),
+                booking.getStartDateTime(), booking.getEndDateTime(), booking.getReason(), null, null, null);
+    }
+
+    private MailModel bookingStatusChangeModel(Booking booking, String statusMessage, String reasonForChange) {
+        return new MailModel("Modifica Prenotazione Auto", getUserName(booking.getUser()), booking.getCar().getName(),
+                null, null, null, statusMessage, reasonForChange, null);
+    }
+
+    private MailModel bookingReminderModel(Booking booking) {
+        return new MailModel("Promemoria Prenotazione Auto", getUserName(booking.getUser()), booking.getCar().getName(),
+                booking.getStartDateTime(), booking.getEndDateTime(), null, null, null, null);
+    }
 
-        Map<String, Object> model = new HashMap<>();
-        model.put("userName", getUserName(user));
-        model.put("bookingId", booking.getId()); // bookingId è nel model ma non usato nel template attuale
-        model.put("carName", booking.getCar().getName());
-        model.put("startTime", booking.getStartDateTime());
-        model.put("endTime", booking.getEndDateTime());
-
-        sendHtmlEmail(user.getEmail(),
-                "Promemoria Prenotazione Auto",
-                "booking-reminder.html",
-                model);
+    private MailModel bookingSummaryModel(Booking firstBooking, Integer bookingCount, LocalDateTime periodEnd) {
+        return new MailModel("Riepilogo Prenotazioni Auto", getUserName(firstBooking.getUser()), firstBooking.getCar().getName(),
+                firstBooking.getStartDateTime(), periodEnd, firstBooking.getReason(), null, null, bookingCount);
     }
-}
\ No newline at end of file
+}
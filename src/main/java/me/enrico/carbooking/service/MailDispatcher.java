@@ -0,0 +1,180 @@
+package me.enrico.carbooking.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.mail.internet.MimeMessage;
+import me.enrico.carbooking.model.Booking;
+import me.enrico.carbooking.model.MailOutbox;
+import me.enrico.carbooking.repositories.BookingRepository;
+import me.enrico.carbooking.repositories.MailOutboxRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Invia in background le email registrate nella outbox.
+ * <p>
+ * Ogni giro preleva un lotto di voci scadute (prenotandole per {@code lease} spostando {@code nextAttemptAt}),
+ * genera i messaggi e li spedisce con un'unica chiamata a {@link JavaMailSender#send(MimeMessage...)}, che riusa
+ * la stessa connessione SMTP per tutto il lotto. Gli invii falliti vengono ritentati con backoff esponenziale.
+ */
+@Service
+public class MailDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailDispatcher.class);
+    private static final ZoneId ROME_ZONE = ZoneId.of("Europe/Rome");
+    private static final Duration MAX_BACKOFF = Duration.ofHours(1);
+    // Esito di ogni voce della outbox: result = sent, retry, failed
+    private static final String OUTCOME_COUNTER = "carbooking.mail.outbox";
+
+    private final MailOutboxRepository mailOutboxRepository;
+    private final BookingRepository bookingRepository;
+    private final EmailService emailService;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${mail.outbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${mail.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${mail.outbox.initial-backoff:30s}")
+    private Duration initialBackoff;
+
+    @Value("${mail.outbox.lease:5m}")
+    private Duration lease;
+
+    public MailDispatcher(MailOutboxRepository mailOutboxRepository, BookingRepository bookingRepository,
+                          EmailService emailService, TransactionTemplate transactionTemplate, MeterRegistry meterRegistry) {
+        this.mailOutboxRepository = mailOutboxRepository;
+        this.bookingRepository = bookingRepository;
+        this.emailService = emailService;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Scheduled(fixedDelayString = "${mail.outbox.poll-interval:2000}")
+    public void dispatchPendingMails() {
+        int dispatched;
+        do {
+            dispatched = dispatchBatch();
+        } while (dispatched == batchSize); // Lotto pieno: probabilmente ce ne sono altre in coda
+    }
+
+    /**
+     * Invia un lotto di email e restituisce quante voci sono state prelevate.
+     */
+    public int dispatchBatch() {
+        List<MailOutbox> batch = claimBatch();
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        Map<Long, Booking> bookings = bookingRepository.findAllWithCarsAndUsersByIdIn(
+                        batch.stream().map(MailOutbox::getBookingId).distinct().toList()).stream()
+                .collect(Collectors.toMap(Booking::getId, Function.identity()));
+
+        Map<MimeMessage, MailOutbox> messages = new LinkedHashMap<>();
+        Map<Long, String> failures = new HashMap<>(); // Per id: l'entità ha equals/hashCode su tutti i campi
+        for (MailOutbox mail : batch) {
+            Booking booking = bookings.get(mail.getBookingId());
+            if (booking == null) {
+                failures.put(mail.getId(), "Prenotazione " + mail.getBookingId() + " non trovata");
+                continue;
+            }
+            try {
+                messages.put(emailService.createOutboxMessage(mail, booking), mail);
+            } catch (Exception e) {
+                failures.put(mail.getId(), "Errore nella generazione del messaggio: " + e.getMessage());
+            }
+        }
+
+        if (!messages.isEmpty()) {
+            try {
+                emailService.send("outbox", messages.keySet().toArray(new MimeMessage[0]));
+            } catch (MailSendException e) {
+                e.getFailedMessages().forEach((message, exception) -> {
+                    MailOutbox mail = messages.get(message);
+                    if (mail != null) {
+                        failures.put(mail.getId(), exception.getMessage());
+                    }
+                });
+                if (e.getFailedMessages().isEmpty()) {
+                    messages.values().forEach(mail -> failures.put(mail.getId(), e.getMessage()));
+                }
+            } catch (MailException e) {
+                messages.values().forEach(mail -> failures.put(mail.getId(), e.getMessage()));
+            }
+        }
+
+        recordOutcome(batch, failures);
+        logger.info("Outbox email: {} inviate, {} fallite.", batch.size() - failures.size(), failures.size());
+        return batch.size();
+    }
+
+    private List<MailOutbox> claimBatch() {
+        return transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now(ROME_ZONE);
+            List<MailOutbox> due = mailOutboxRepository.findDueForUpdate(MailOutbox.Status.PENDING, now, PageRequest.of(0, batchSize));
+            for (MailOutbox mail : due) {
+                mail.setAttempts(mail.getAttempts() + 1);
+                // Se l'istanza si ferma durante l'invio la voce torna disponibile alla scadenza del lease
+                mail.setNextAttemptAt(now.plus(lease));
+            }
+            return due;
+        });
+    }
+
+    private void recordOutcome(List<MailOutbox> batch, Map<Long, String> failures) {
+        LocalDateTime now = LocalDateTime.now(ROME_ZONE);
+        for (MailOutbox mail : batch) {
+            String error = failures.get(mail.getId());
+            if (error == null) {
+                mail.setStatus(MailOutbox.Status.SENT);
+                mail.setSentAt(now);
+                mail.setLastError(null);
+                meterRegistry.counter(OUTCOME_COUNTER, "type", mail.getType().name(), "result", "sent").increment();
+            } else if (mail.getAttempts() >= maxAttempts) {
+                mail.setStatus(MailOutbox.Status.FAILED);
+                mail.setLastError(truncate(error));
+                meterRegistry.counter(OUTCOME_COUNTER, "type", mail.getType().name(), "result", "failed").increment();
+                logger.error("Email ID {} ({}) abbandonata dopo {} tentativi: {}", mail.getId(), mail.getType(), mail.getAttempts(), error);
+            } else {
+                mail.setNextAttemptAt(now.plus(backoff(mail.getAttempts())));
+                mail.setLastError(truncate(error));
+                meterRegistry.counter(OUTCOME_COUNTER, "type", mail.getType().name(), "result", "retry").increment();
+                logger.warn("Invio email ID {} ({}) fallito, nuovo tentativo alle {}: {}", mail.getId(), mail.getType(), mail.getNextAttemptAt(), error);
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> mailOutboxRepository.saveAll(batch));
+    }
+
+    private Duration backoff(int attempts) {
+        Duration delay = initialBackoff.multipliedBy(1L << Math.min(attempts - 1, 16));
+        return delay.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : delay;
+    }
+
+    private static String truncate(String error) {
+        if (error == null) {
+            return null;
+        }
+        return error.length() > 1000 ? error.substring(0, 1000) : error;
+    }
+}
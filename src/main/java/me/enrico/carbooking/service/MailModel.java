@@ -0,0 +1,10 @@
+package me.enrico.carbooking.service;
+
+import java.time.LocalDateTime;
+
+/**
+ * Variabili dei template email delle prenotazioni. I campi non usati da un template restano {@code null}.
+ */
+public record MailModel(String subject, String userName, String carName, LocalDateTime startTime, LocalDateTime endTime,
+                        String reason, String status, String reasonForChange, Integer bookingCount) {
+}
@@ -0,0 +1,162 @@
+package me.enrico.carbooking.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Service;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.unbescape.html.HtmlEscape;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.Year;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Genera le email delle prenotazioni senza passare da Thymeleaf a ogni messaggio.
+ * <p>
+ * All'avvio ogni template di {@code templates/mail} viene elaborato una volta con valori segnaposto;
+ * l'HTML risultante viene spezzato in parti statiche e variabili. Per ogni email resta solo da concatenare
+ * le parti statiche con i valori della prenotazione, escapati come farebbe {@code th:text}.
+ * L'anno nel piè di pagina è calcolato dal template, quindi i template vengono ricompilati al cambio d'anno.
+ */
+@Service
+public class MailTemplateRenderer {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailTemplateRenderer.class);
+    private static final String TEMPLATE_LOCATION = "classpath:templates/mail/*.html";
+    // Stesso formato usato dai template con #temporals.format
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+    // Date improbabili usate come segnaposto: nei template compaiono solo già formattate
+    private static final LocalDateTime START_PLACEHOLDER = LocalDateTime.of(1901, 1, 1, 1, 1);
+    private static final LocalDateTime END_PLACEHOLDER = LocalDateTime.of(1901, 1, 1, 2, 2);
+
+    private static final Map<String, Function<MailModel, String>> VARIABLES = new LinkedHashMap<>();
+
+    static {
+        VARIABLES.put("subject", model -> escape(model.subject()));
+        VARIABLES.put("userName", model -> escape(model.userName()));
+        VARIABLES.put("carName", model -> escape(model.carName()));
+        VARIABLES.put("reason", model -> escape(model.reason()));
+        VARIABLES.put("status", model -> escape(model.status()));
+        VARIABLES.put("reasonForChange", model -> escape(model.reasonForChange()));
+        VARIABLES.put("bookingCount", model -> model.bookingCount() != null ? model.bookingCount().toString() : "");
+        VARIABLES.put("startTime", model -> model.startTime() != null ? DATE_FORMAT.format(model.startTime()) : "");
+        VARIABLES.put("endTime", model -> model.endTime() != null ? DATE_FORMAT.format(model.endTime()) : "");
+    }
+
+    private final SpringTemplateEngine thymeleafTemplateEngine;
+
+    private volatile Map<String, CompiledTemplate> templates = Map.of();
+    private volatile int compiledYear;
+
+    public MailTemplateRenderer(SpringTemplateEngine thymeleafTemplateEngine) {
+        this.thymeleafTemplateEngine = thymeleafTemplateEngine;
+    }
+
+    @PostConstruct
+    public synchronized void compile() throws IOException {
+        Map<String, CompiledTemplate> compiled = new HashMap<>();
+        for (Resource resource : new PathMatchingResourcePatternResolver().getResources(TEMPLATE_LOCATION)) {
+            String templateName = resource.getFilename();
+            compiled.put(templateName, compile(templateName));
+        }
+        templates = compiled;
+        compiledYear = Year.now().getValue();
+        logger.info("Template email precompilati: {}", compiled.keySet());
+    }
+
+    /**
+     * @param templateName nome del file in {@code templates/mail}, es. {@code booking-confirmation.html}
+     */
+    public String render(String templateName, MailModel model) {
+        if (Year.now().getValue() != compiledYear) {
+            recompile();
+        }
+        CompiledTemplate template = templates.get(templateName);
+        if (template == null) {
+            throw new IllegalArgumentException("Template email non trovato: " + templateName);
+        }
+        return template.render(model);
+    }
+
+    private synchronized void recompile() {
+        if (Year.now().getValue() == compiledYear) {
+            return;
+        }
+        try {
+            compile();
+        } catch (IOException e) {
+            logger.error("Impossibile ricompilare i template email: {}", e.getMessage(), e);
+        }
+    }
+
+    private CompiledTemplate compile(String templateName) {
+        Context context = new Context();
+        VARIABLES.keySet().forEach(name -> context.setVariable(name, marker(name)));
+        context.setVariable("startTime", START_PLACEHOLDER);
+        context.setVariable("endTime", END_PLACEHOLDER);
+
+        String html = thymeleafTemplateEngine.process("mail/" + templateName, context)
+                .replace(DATE_FORMAT.format(START_PLACEHOLDER), marker("startTime"))
+                .replace(DATE_FORMAT.format(END_PLACEHOLDER), marker("endTime"));
+
+        List<String> literals = new ArrayList<>();
+        List<Function<MailModel, String>> values = new ArrayList<>();
+        int position = 0;
+        while (true) {
+            int next = -1;
+            String nextVariable = null;
+            for (String name : VARIABLES.keySet()) {
+                int index = html.indexOf(marker(name), position);
+                if (index >= 0 && (next < 0 || index < next)) {
+                    next = index;
+                    nextVariable = name;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            literals.add(html.substring(position, next));
+            values.add(VARIABLES.get(nextVariable));
+            position = next + marker(nextVariable).length();
+        }
+        literals.add(html.substring(position));
+        return new CompiledTemplate(literals.toArray(String[]::new), values);
+    }
+
+    private static String marker(String variable) {
+        return "@@cb:" + variable + "@@";
+    }
+
+    private static String escape(String value) {
+        return value != null ? HtmlEscape.escapeHtml4Xml(value) : "";
+    }
+
+    /**
+     * Parti statiche intercalate dalle variabili: {@code literals[0] values[0] literals[1] ... literals[n]}.
+     */
+    private record CompiledTemplate(String[] literals, List<Function<MailModel, String>> values) {
+
+        String render(MailModel model) {
+            int length = 0;
+            for (String literal : literals) {
+                length += literal.length();
+            }
+            StringBuilder html = new StringBuilder(length + 64 * values.size());
+            for (int i = 0; i < values.size(); i++) {
+                html.append(literals[i]).append(values.get(i).apply(model));
+            }
+            return html.append(literals[literals.length - 1]).toString();
+        }
+    }
+}
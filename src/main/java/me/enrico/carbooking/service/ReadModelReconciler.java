@@ -0,0 +1,82 @@
+package me.enrico.carbooking.service;
+
+import lombok.RequiredArgsConstructor;
+import me.enrico.carbooking.dto.BookingSignature;
+import me.enrico.carbooking.event.BookingEvent;
+import me.enrico.carbooking.repositories.BookingRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Riallinea al database le strutture in memoria di questa istanza ({@link BookingTimelineIndex},
+ * {@link ActiveBookingTimeline}, {@link CarOccupancyTracker}, {@link StatisticsService}).
+ * <p>
+ * Gli eventi di {@link BookingService} arrivano solo all'istanza che ha eseguito la modifica: con più istanze
+ * le prenotazioni create o annullate altrove non compaiono. A intervalli regolari si legge quindi la
+ * {@link BookingSignature} dal database e la si confronta con quella attesa, aggiornata dagli eventi locali;
+ * se differiscono, un'altra istanza ha modificato le prenotazioni e tutto viene ricaricato.
+ * <p>
+ * Il ricaricamento avviene con tutti i lock delle auto: le modifiche locali, e i relativi eventi dopo il commit,
+ * avvengono sotto uno di quei lock, quindi la firma letta e le strutture ricaricate non possono perderne una.
+ * Le statistiche si ricostruiscono dopo, fuori dai lock, perché gestiscono da sole gli eventi concorrenti.
+ */
+@Service
+@RequiredArgsConstructor
+public class ReadModelReconciler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReadModelReconciler.class);
+
+    private final BookingRepository bookingRepository;
+    private final BookingLocks bookingLocks;
+    private final BookingTimelineIndex timelineIndex;
+    private final ActiveBookingTimeline activeBookingTimeline;
+    private final CarOccupancyTracker carOccupancyTracker;
+    private final StatisticsService statisticsService;
+
+    // Nulla fino al primo confronto: le strutture potrebbero aver perso modifiche avvenute durante l'avvio
+    private BookingSignature expected;
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onBookingEvent(BookingEvent event) {
+        if (expected == null) {
+            return;
+        }
+        long id = event.booking().getId();
+        expected = event.type() == BookingEvent.Type.CREATED ? expected.plus(1, id) : expected.plus(0, -id);
+    }
+
+    @Scheduled(fixedDelayString = "${carbooking.read-models.reconcile-interval:30000}",
+            initialDelayString = "${carbooking.read-models.reconcile-interval:30000}")
+    public void reconcile() {
+        // Primo confronto senza lock: nel caso normale non blocca le prenotazioni
+        if (bookingRepository.bookingSignature().equals(currentExpected())) {
+            return;
+        }
+        boolean reloaded = bookingLocks.withAllCarLocks(() -> {
+            BookingSignature actual = bookingRepository.bookingSignature();
+            if (actual.equals(currentExpected())) {
+                return false; // La differenza era un evento locale non ancora arrivato
+            }
+            timelineIndex.warmUp();
+            activeBookingTimeline.reload();
+            carOccupancyTracker.warmUp();
+            setExpected(actual);
+            return true;
+        });
+        if (reloaded) {
+            statisticsService.rebuild();
+            logger.info("Strutture in memoria riallineate al database dopo modifiche di un'altra istanza.");
+        }
+    }
+
+    private synchronized BookingSignature currentExpected() {
+        return expected;
+    }
+
+    private synchronized void setExpected(BookingSignature signature) {
+        expected = signature;
+    }
+}
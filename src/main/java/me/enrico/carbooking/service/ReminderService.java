@@ -1,17 +1,27 @@
 package me.enrico.carbooking.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
+import me.enrico.carbooking.dto.ReminderRunStats;
 import me.enrico.carbooking.model.Booking;
 import me.enrico.carbooking.repositories.BookingRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Service
 @RequiredArgsConstructor
@@ -23,41 +33,91 @@ public class ReminderService {
 
     private final BookingRepository bookingRepository;
     private final EmailService emailService;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${reminder.service.chunk-size:100}")
+    private int chunkSize;
+
+    @Value("${reminder.service.concurrency:8}")
+    private int concurrency;
+
+    private volatile ReminderRunStats lastRun;
 
     @Scheduled(cron = "${reminder.service.cron}")
-    @Transactional
     public void sendUpcomingBookingReminders() {
+        runReminders();
+    }
+
+    /**
+     * Invia i promemoria a lotti: ogni lotto viene letto con una query paginata, spedito in parallelo
+     * su un pool limitato di virtual thread e marcato come inviato con un solo UPDATE.
+     * Nessuna transazione resta aperta durante l'invio delle email.
+     */
+    public ReminderRunStats runReminders() {
+        long startedAt = System.nanoTime();
         LocalDateTime now = LocalDateTime.now(ROME_ZONE);
         LocalDateTime reminderWindowEnd = now.plusHours(REMINDER_WINDOW_HOURS);
 
         logger.info("Esecuzione del task di invio promemoria prenotazioni. Ricerca prenotazioni tra {} e {}", now, reminderWindowEnd);
 
-        List<Booking> upcomingBookings;
-        try {
-            upcomingBookings = bookingRepository.findByActiveTrueAndReminderSentFalseAndStartDateTimeBetween(now, reminderWindowEnd);
+        int candidates = 0;
+        int sent = 0;
+        int failed = 0;
+        try (ExecutorService executor = Executors.newFixedThreadPool(concurrency, Thread.ofVirtual().name("reminder-", 0).factory())) {
+            Long lastId = 0L;
+            List<Booking> chunk;
+            do {
+                chunk = bookingRepository.findReminderCandidates(now, reminderWindowEnd, lastId, PageRequest.of(0, chunkSize));
+                if (chunk.isEmpty()) {
+                    break;
+                }
+                candidates += chunk.size();
+                lastId = chunk.get(chunk.size() - 1).getId();
+
+                List<Long> sentIds = sendChunk(executor, chunk);
+                sent += sentIds.size();
+                failed += chunk.size() - sentIds.size();
+                if (!sentIds.isEmpty()) {
+                    transactionTemplate.executeWithoutResult(status -> bookingRepository.markReminderSent(sentIds));
+                }
+            } while (chunk.size() == chunkSize);
         } catch (Exception e) {
             logger.error("Errore durante il recupero delle prenotazioni per l'invio dei promemoria.", e);
-            return;
         }
 
-        if (upcomingBookings.isEmpty()) {
-            logger.info("Nessuna prenotazione imminente trovata per cui inviare un promemoria.");
-            return;
-        }
+        ReminderRunStats stats = new ReminderRunStats(candidates, sent, failed, Duration.ofNanos(System.nanoTime() - startedAt));
+        lastRun = stats;
+        meterRegistry.timer("carbooking.reminder.run").record(stats.wallTime());
+        meterRegistry.counter("carbooking.reminder.emails", "result", "sent").increment(stats.sent());
+        meterRegistry.counter("carbooking.reminder.emails", "result", "failed").increment(stats.failed());
+        logger.info("Task di invio promemoria prenotazioni completato: {} candidate, {} inviate, {} fallite in {} ms.",
+                stats.candidates(), stats.sent(), stats.failed(), stats.wallTime().toMillis());
+        return stats;
+    }
 
-        logger.info("Trovate {} prenotazioni per cui inviare un promemoria.", upcomingBookings.size());
+    public ReminderRunStats getLastRun() {
+        return lastRun;
+    }
+
+    private List<Long> sendChunk(ExecutorService executor, List<Booking> chunk) throws InterruptedException {
+        List<Future<Long>> results = new ArrayList<>(chunk.size());
+        for (Booking booking : chunk) {
+            results.add(executor.submit(() -> {
+                emailService.deliverBookingReminderEmail(booking);
+                return booking.getId();
+            }));
+        }
 
-        for (Booking booking : upcomingBookings) {
+        List<Long> sentIds = new ArrayList<>(chunk.size());
+        for (int i = 0; i < results.size(); i++) {
             try {
-                logger.info("Invio promemoria per la prenotazione ID: {}", booking.getId());
-                emailService.sendBookingReminderEmail(booking);
-                booking.setReminderSent(true);
-                bookingRepository.save(booking);
-                logger.info("Promemoria inviato e stato aggiornato per la prenotazione ID: {}", booking.getId());
-            } catch (Exception e) {
-                logger.error("Errore durante l'invio del promemoria per la prenotazione ID {} o durante l'aggiornamento dello stato: {}", booking.getId(), e.getMessage(), e);
+                sentIds.add(results.get(i).get());
+            } catch (ExecutionException e) {
+                logger.error("Errore durante l'invio del promemoria per la prenotazione ID {}: {}",
+                        chunk.get(i).getId(), e.getCause().getMessage(), e.getCause());
             }
         }
-        logger.info("Task di invio promemoria prenotazioni completato.");
+        return sentIds;
     }
-}
\ No newline at end of file
+}
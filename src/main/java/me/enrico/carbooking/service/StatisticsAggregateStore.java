@@ -0,0 +1,147 @@
+package me.enrico.carbooking.service;
+
+import me.enrico.carbooking.dto.BookingStatisticsRow;
+import me.enrico.carbooking.dto.StatisticsDTO;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+
+/**
+ * Aggregati delle statistiche aggiornati in modo incrementale, una prenotazione alla volta.
+ * <p>
+ * Segue la stessa semantica della scansione completa in {@link StatisticsService}: conta tutte le prenotazioni,
+ * comprese quelle terminate o annullate. La fotografia {@link StatisticsDTO} viene ricostruita solo dopo una modifica,
+ * quindi le letture successive costano O(1).
+ * <p>
+ * Gli aggregati sono per id di auto e utente; nome dell'auto e username si risolvono solo nella fotografia, così
+ * dopo una rinomina ({@link #renameCar}, {@link #renameUser}) i conteggi restano uniti sotto il nome nuovo.
+ */
+public class StatisticsAggregateStore {
+
+    private final Map<Long, Long> bookingsPerCar = new HashMap<>();
+    private final Map<Long, Double> hoursPerCar = new HashMap<>();
+    private final Map<Long, Long> bookingsPerUser = new HashMap<>();
+    private final Map<Long, Double> hoursPerUser = new HashMap<>();
+    private final Map<Long, Map<Long, Long>> carUsagePerUser = new HashMap<>();
+    private final Map<String, Long> reasonDistribution = new HashMap<>();
+    private final Map<String, Long> monthlyBookings = new HashMap<>();
+    private final Map<Long, String> carNames = new HashMap<>();
+    private final Map<Long, String> usernames = new HashMap<>();
+    private long totalBookings;
+    private double totalDuration;
+
+    private volatile StatisticsDTO snapshot;
+
+    public synchronized void add(BookingStatisticsRow row) {
+        totalBookings++;
+        totalDuration += row.duration();
+
+        Long carId = row.carName() != null ? row.carId() : null;
+        Long userId = row.username() != null ? row.userId() : null;
+        if (carId != null) {
+            // Il nome già noto può essere più recente di quello dell'evento: lo aggiornano solo ricostruzione e rinomina
+            carNames.putIfAbsent(carId, row.carName());
+            bookingsPerCar.merge(carId, 1L, Long::sum);
+            hoursPerCar.merge(carId, (double) row.duration(), Double::sum);
+        }
+        if (userId != null) {
+            usernames.putIfAbsent(userId, row.username());
+            bookingsPerUser.merge(userId, 1L, Long::sum);
+            hoursPerUser.merge(userId, (double) row.duration(), Double::sum);
+            if (carId != null) {
+                carUsagePerUser.computeIfAbsent(userId, id -> new HashMap<>()).merge(carId, 1L, Long::sum);
+            }
+        }
+        if (row.reason() != null) {
+            reasonDistribution.merge(row.reason(), 1L, Long::sum);
+        }
+        if (row.startDateTime() != null) {
+            String month = String.format("%d-%02d", row.startDateTime().getYear(), row.startDateTime().getMonthValue());
+            monthlyBookings.merge(month, 1L, Long::sum);
+        }
+        snapshot = null;
+    }
+
+    /**
+     * Sostituisce tutti gli aggregati con quelli calcolati dalle righe fornite.
+     */
+    public synchronized void reset(Collection<BookingStatisticsRow> rows) {
+        bookingsPerCar.clear();
+        hoursPerCar.clear();
+        bookingsPerUser.clear();
+        hoursPerUser.clear();
+        carUsagePerUser.clear();
+        reasonDistribution.clear();
+        monthlyBookings.clear();
+        carNames.clear();
+        usernames.clear();
+        totalBookings = 0;
+        totalDuration = 0;
+        rows.forEach(this::add);
+        snapshot = null;
+    }
+
+    /**
+     * Nuovo nome di un'auto già presente negli aggregati; le auto senza prenotazioni vengono ignorate.
+     */
+    public synchronized void renameCar(Long carId, String name) {
+        if (carNames.containsKey(carId) && name != null && !name.equals(carNames.get(carId))) {
+            carNames.put(carId, name);
+            snapshot = null;
+        }
+    }
+
+    /**
+     * Nuovo username di un utente già presente negli aggregati; gli utenti senza prenotazioni vengono ignorati.
+     */
+    public synchronized void renameUser(Long userId, String username) {
+        if (usernames.containsKey(userId) && username != null && !username.equals(usernames.get(userId))) {
+            usernames.put(userId, username);
+            snapshot = null;
+        }
+    }
+
+    public StatisticsDTO snapshot() {
+        StatisticsDTO current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot == null) {
+                snapshot = buildSnapshot();
+            }
+            return snapshot;
+        }
+    }
+
+    private StatisticsDTO buildSnapshot() {
+        // Come la scansione completa, auto con lo stesso nome finiscono sotto la stessa voce
+        Map<String, String> mostUsedCarPerUser = new HashMap<>();
+        carUsagePerUser.forEach((userId, carMap) -> mostUsedCarPerUser.put(usernames.get(userId),
+                byName(carMap, carNames, Long::sum).entrySet().stream()
+                        .max(Map.Entry.comparingByValue())
+                        .map(Map.Entry::getKey)
+                        .orElse("Nessuna auto")));
+
+        return StatisticsDTO.builder()
+                .bookingsPerCar(byName(bookingsPerCar, carNames, Long::sum))
+                .hoursPerCar(byName(hoursPerCar, carNames, Double::sum))
+                .bookingsPerUser(byName(bookingsPerUser, usernames, Long::sum))
+                .hoursPerUser(byName(hoursPerUser, usernames, Double::sum))
+                .mostUsedCarPerUser(mostUsedCarPerUser)
+                .reasonDistribution(new HashMap<>(reasonDistribution))
+                .monthlyBookings(new HashMap<>(monthlyBookings))
+                .avgDuration(totalBookings > 0 ? totalDuration / totalBookings : 0.0)
+                .totalBookings(totalBookings)
+                .build();
+    }
+
+    private static <V> Map<String, V> byName(Map<Long, V> byId, Map<Long, String> names,
+                                             BinaryOperator<V> merge) {
+        Map<String, V> result = new HashMap<>();
+        byId.forEach((id, value) -> result.merge(names.get(id), value, merge));
+        return result;
+    }
+}
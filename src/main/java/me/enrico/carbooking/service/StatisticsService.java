@@ -1,22 +1,296 @@
 package me.enrico.carbooking.service;
 
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
+import me.enrico.carbooking.dto.BookingStatisticsRow;
+import me.enrico.carbooking.dto.GroupTotals;
+import me.enrico.carbooking.dto.MonthlyCount;
+import me.enrico.carbooking.dto.OverallTotals;
 import me.enrico.carbooking.dto.StatisticsDTO;
+import me.enrico.carbooking.dto.UserCarCount;
+import me.enrico.carbooking.event.BookingEvent;
 import me.enrico.carbooking.model.Booking;
+import me.enrico.carbooking.model.Car;
+import me.enrico.carbooking.model.User;
 import me.enrico.carbooking.repositories.BookingRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class StatisticsService {
 
+    private static final Logger logger = LoggerFactory.getLogger(StatisticsService.class);
+
     private final BookingRepository bookingRepository;
+    private final StatisticsAggregateStore aggregateStore = new StatisticsAggregateStore();
+
+    // Una sola ricostruzione alla volta; il monitor protegge lo stato condiviso con gli eventi
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+    private final Object monitor = new Object();
+    private final Set<Long> inFlight = new HashSet<>();
+    private final Set<Long> alreadyDelivered = new HashSet<>();
+    private final Map<Long, BookingStatisticsRow> buffered = new LinkedHashMap<>();
+    private boolean rebuilding;
 
+    /**
+     * Restituisce le statistiche dagli aggregati incrementali, senza caricare prenotazioni.
+     */
     public StatisticsDTO getStatistics() {
+        return aggregateStore.snapshot();
+    }
+
+    /**
+     * Ricostruisce gli aggregati dal database in un'unica lettura.
+     * Sempre dal primario: gli eventi successivi si sommano a questa lettura, che non può essere in ritardo.
+     * <p>
+     * La lettura avviene senza bloccare gli eventi, che nel frattempo vengono accodati. Dopo la sostituzione degli
+     * aggregati si riapplicano solo quelli non compresi nella lettura; le prenotazioni già lette ma il cui evento
+     * non è ancora arrivato vengono ricordate, così quell'evento non le conta una seconda volta.
+     */
+    @PostConstruct
+    public void rebuild() {
+        rebuildLock.lock();
+        try {
+            synchronized (monitor) {
+                rebuilding = true;
+                buffered.clear();
+            }
+            List<BookingStatisticsRow> rows;
+            try {
+                rows = bookingRepository.findAllStatisticsRows();
+            } catch (RuntimeException e) {
+                synchronized (monitor) {
+                    // Gli aggregati precedenti restano validi: si applicano gli eventi arrivati durante la lettura
+                    buffered.values().forEach(this::apply);
+                    buffered.clear();
+                    rebuilding = false;
+                }
+                throw e;
+            }
+            synchronized (monitor) {
+                Set<Long> candidates = new HashSet<>(buffered.keySet());
+                candidates.addAll(inFlight);
+                Set<Long> alreadyRead = new HashSet<>();
+                for (BookingStatisticsRow row : rows) {
+                    if (candidates.contains(row.id())) {
+                        alreadyRead.add(row.id());
+                    }
+                }
+
+                aggregateStore.reset(rows);
+                alreadyDelivered.clear();
+                buffered.forEach((id, row) -> {
+                    if (!alreadyRead.contains(id)) {
+                        aggregateStore.add(row);
+                    }
+                });
+                for (Long id : inFlight) {
+                    if (alreadyRead.contains(id)) {
+                        alreadyDelivered.add(id);
+                    }
+                }
+                buffered.clear();
+                rebuilding = false;
+            }
+            logger.info("Statistiche ricostruite da {} prenotazioni.", rows.size());
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    /**
+     * Registra le prenotazioni create ma non ancora confermate, mentre la transazione è ancora aperta.
+     * Una ricostruzione che nel frattempo le legge dal database sa così che il loro evento deve essere scartato.
+     */
+    @EventListener
+    public void trackUncommitted(BookingEvent event) {
+        if (event.type() != BookingEvent.Type.CREATED || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        Long id = event.booking().getId();
+        synchronized (monitor) {
+            inFlight.add(id);
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    synchronized (monitor) {
+                        inFlight.remove(id);
+                    }
+                }
+            }
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookingEvent(BookingEvent event) {
+        // Terminazioni e annullamenti non cambiano gli aggregati: le statistiche contano tutte le prenotazioni
+        if (event.type() == BookingEvent.Type.CREATED) {
+            BookingStatisticsRow row = BookingStatisticsRow.of(event.booking());
+            synchronized (monitor) {
+                inFlight.remove(row.id());
+                if (rebuilding) {
+                    buffered.put(row.id(), row);
+                } else {
+                    apply(row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Rinomina dell'auto negli aggregati, dopo il commit se c'è una transazione attiva. Chiamato da {@link CarChangeListener}.
+     */
+    public void onCarChanged(Car car) {
+        Long carId = car.getId();
+        String name = car.getName();
+        afterCommit(() -> aggregateStore.renameCar(carId, name));
+    }
+
+    /**
+     * Cambio di username negli aggregati, dopo il commit se c'è una transazione attiva. Chiamato da {@link UserChangeListener}.
+     */
+    public void onUserChanged(User user) {
+        Long userId = user.getId();
+        String username = user.getUsername();
+        afterCommit(() -> aggregateStore.renameUser(userId, username));
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private void apply(BookingStatisticsRow row) {
+        // Già compresa nell'ultima ricostruzione: l'evento arriva dopo la lettura e non va contato di nuovo
+        if (!alreadyDelivered.remove(row.id())) {
+            aggregateStore.add(row);
+        }
+    }
+
+    /**
+     * Confronta gli aggregati incrementali con il calcolo completo su tutte le prenotazioni.
+     *
+     * @return l'elenco delle differenze trovate, vuoto se i due risultati coincidono; il calcolo completo
+     * avviene sul primario, perché una replica in ritardo mostrerebbe differenze inesistenti
+     */
+    public List<String> checkConsistency() {
+        StatisticsDTO incremental = aggregateStore.snapshot();
+        StatisticsDTO fullScan = computeFullScanStatistics();
+        List<String> differences = new ArrayList<>();
+
+        compare(differences, "bookingsPerCar", incremental.getBookingsPerCar(), fullScan.getBookingsPerCar());
+        compare(differences, "hoursPerCar", incremental.getHoursPerCar(), fullScan.getHoursPerCar());
+        compare(differences, "bookingsPerUser", incremental.getBookingsPerUser(), fullScan.getBookingsPerUser());
+        compare(differences, "hoursPerUser", incremental.getHoursPerUser(), fullScan.getHoursPerUser());
+        compare(differences, "reasonDistribution", incremental.getReasonDistribution(), fullScan.getReasonDistribution());
+        compare(differences, "monthlyBookings", incremental.getMonthlyBookings(), fullScan.getMonthlyBookings());
+        compare(differences, "totalBookings", incremental.getTotalBookings(), fullScan.getTotalBookings());
+        if (Math.abs(incremental.getAvgDuration() - fullScan.getAvgDuration()) > 1e-9) {
+            differences.add("avgDuration: " + incremental.getAvgDuration() + " != " + fullScan.getAvgDuration());
+        }
+        // A parità di utilizzi l'auto più usata può essere scelta diversamente, quindi si confrontano solo gli utenti
+        if (!Objects.equals(incremental.getMostUsedCarPerUser().keySet(), fullScan.getMostUsedCarPerUser().keySet())) {
+            differences.add("mostUsedCarPerUser: utenti diversi");
+        }
+
+        if (!differences.isEmpty()) {
+            logger.warn("Statistiche incrementali non allineate al calcolo completo: {}", differences);
+        }
+        return differences;
+    }
+
+    private static void compare(List<String> differences, String field, Object incremental, Object fullScan) {
+        if (!Objects.equals(incremental, fullScan)) {
+            differences.add(field + ": " + incremental + " != " + fullScan);
+        }
+    }
+
+    /**
+     * Percorso alternativo: le stesse statistiche calcolate con GROUP BY nel database.
+     * Dal database arrivano solo poche centinaia di righe aggregate invece di tutte le prenotazioni.
+     */
+    @Transactional(readOnly = true)
+    public StatisticsDTO computeSqlAggregatedStatistics() {
+        Map<String, Long> bookingsPerCar = new HashMap<>();
+        Map<String, Double> hoursPerCar = new HashMap<>();
+        for (GroupTotals totals : bookingRepository.sumByCar()) {
+            bookingsPerCar.put(totals.key(), totals.bookings());
+            hoursPerCar.put(totals.key(), totals.hours().doubleValue());
+        }
+
+        Map<String, Long> bookingsPerUser = new HashMap<>();
+        Map<String, Double> hoursPerUser = new HashMap<>();
+        for (GroupTotals totals : bookingRepository.sumByUser()) {
+            bookingsPerUser.put(totals.key(), totals.bookings());
+            hoursPerUser.put(totals.key(), totals.hours().doubleValue());
+        }
+
+        Map<String, UserCarCount> topCarPerUser = new HashMap<>();
+        for (UserCarCount count : bookingRepository.countByUserAndCar()) {
+            topCarPerUser.merge(count.username(), count,
+                    (current, candidate) -> candidate.bookings() > current.bookings() ? candidate : current);
+        }
+        Map<String, String> mostUsedCarPerUser = new HashMap<>();
+        topCarPerUser.forEach((username, count) -> mostUsedCarPerUser.put(username, count.carName()));
+
+        Map<String, Long> reasonDistribution = new HashMap<>();
+        for (GroupTotals totals : bookingRepository.sumByReason()) {
+            reasonDistribution.put(totals.key(), totals.bookings());
+        }
+
+        Map<String, Long> monthlyBookings = new HashMap<>();
+        for (MonthlyCount count : bookingRepository.countByMonth()) {
+            monthlyBookings.put(String.format("%d-%02d", count.year(), count.month()), count.bookings());
+        }
+
+        OverallTotals overall = bookingRepository.overallTotals();
+
+        return StatisticsDTO.builder()
+                .bookingsPerCar(bookingsPerCar)
+                .hoursPerCar(hoursPerCar)
+                .bookingsPerUser(bookingsPerUser)
+                .hoursPerUser(hoursPerUser)
+                .mostUsedCarPerUser(mostUsedCarPerUser)
+                .reasonDistribution(reasonDistribution)
+                .monthlyBookings(monthlyBookings)
+                .avgDuration(overall.avgDuration() != null ? overall.avgDuration() : 0.0)
+                .totalBookings(overall.bookings())
+                .build();
+    }
+
+    /**
+     * Calcolo completo su tutte le prenotazioni, usato come riferimento da {@link #checkConsistency()}.
+     */
+    @Transactional(readOnly = true)
+    public StatisticsDTO computeFullScanStatistics() {
         List<Booking> allBookings = bookingRepository.findAll();
 
         // Statistiche per auto
@@ -0,0 +1,29 @@
+package me.enrico.carbooking.service;
+
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import me.enrico.carbooking.model.User;
+import org.springframework.context.annotation.Lazy;
+
+/**
+ * Entity listener di {@link User}. Hibernate crea una propria istanza del listener, distinta dal singleton Spring:
+ * la modifica viene quindi inoltrata allo {@link UserDetailsCache} dell'applicazione, che sa con quale username
+ * ogni utente è stato messo in cache, e allo {@link StatisticsService}, che mostra le statistiche con lo username attuale.
+ */
+public class UserChangeListener {
+
+    private final UserDetailsCache userCache;
+    private final StatisticsService statisticsService;
+
+    public UserChangeListener(@Lazy UserDetailsCache userCache, @Lazy StatisticsService statisticsService) { // Lazy: istanziato durante l'avvio di JPA
+        this.userCache = userCache;
+        this.statisticsService = statisticsService;
+    }
+
+    @PostUpdate
+    @PostRemove
+    public void onUserChanged(User user) {
+        userCache.onUserChanged(user);
+        statisticsService.onUserChanged(user);
+    }
+}
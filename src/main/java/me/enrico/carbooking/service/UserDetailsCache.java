@@ -0,0 +1,120 @@
+package me.enrico.carbooking.service;
+
+import me.enrico.carbooking.model.Role;
+import me.enrico.carbooking.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache degli utenti per username, davanti a {@link CustomUserDetailsService}.
+ * <p>
+ * Usa la cache Caffeine {@code users} (dimensione massima e TTL in {@code carbooking.cache.specs.users}),
+ * quindi hit rate ed eviction compaiono in {@code /admin/caches}. In cache non finisce l'entità ma una sua copia
+ * immutabile: a ogni lettura si restituisce un nuovo {@link User}, così chi lo modifica non altera la voce condivisa.
+ * <p>
+ * Quando un utente o i suoi ruoli cambiano, o l'utente viene eliminato ({@link UserChangeListener}),
+ * la voce viene rimossa subito e di nuovo dopo il commit, così una lettura concorrente non può rimettere in cache
+ * i dati vecchi.
+ */
+@Component
+public class UserDetailsCache implements UserCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserDetailsCache.class);
+    public static final String CACHE_NAME = "users";
+
+    private final CaffeineCache cache;
+    // Ultimo username messo in cache per ogni id: dopo un cambio di username la voce è ancora sotto quello vecchio
+    private final Map<Long, String> usernamesById = new ConcurrentHashMap<>();
+
+    public UserDetailsCache(CacheManager cacheManager) {
+        this.cache = (CaffeineCache) cacheManager.getCache(CACHE_NAME);
+        if (this.cache == null) {
+            throw new IllegalStateException("Cache '" + CACHE_NAME + "' non configurata (carbooking.cache.specs." + CACHE_NAME + ")");
+        }
+    }
+
+    @Override
+    public User getUserFromCache(String username) {
+        Snapshot snapshot = cache.get(username, Snapshot.class);
+        return snapshot != null ? snapshot.toUser() : null;
+    }
+
+    @Override
+    public void putUserInCache(UserDetails user) {
+        if (!(user instanceof User entity)) {
+            throw new IllegalArgumentException("Sono ammessi solo utenti " + User.class.getName());
+        }
+        if (entity.getId() != null) {
+            usernamesById.put(entity.getId(), entity.getUsername());
+        }
+        cache.put(entity.getUsername(), Snapshot.of(entity));
+    }
+
+    @Override
+    public void removeUserFromCache(String username) {
+        cache.evict(username);
+    }
+
+    public void onUserChanged(User user) {
+        evict(user);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(user);
+                }
+            });
+        }
+    }
+
+    /**
+     * Rimuove la voce con lo username attuale e, se diverso, con quello con cui l'utente era stato messo in cache.
+     */
+    private void evict(User user) {
+        cache.evict(user.getUsername());
+        if (user.getId() != null) {
+            String previousUsername = usernamesById.remove(user.getId());
+            if (previousUsername != null && !previousUsername.equals(user.getUsername())) {
+                cache.evict(previousUsername);
+            }
+        }
+        logger.debug("Utente {} rimosso dalla cache", user.getUsername());
+    }
+
+    /**
+     * Copia immutabile dei campi di {@link User} usati dall'autenticazione e dai controller.
+     */
+    private record Snapshot(Long id, long version, String username, String email, String password, String firstName, String lastName,
+                            Set<Role> roles, boolean accountNonExpired, boolean accountNonLocked,
+                            boolean credentialsNonExpired, boolean enabled) {
+
+        static Snapshot of(User user) {
+            return new Snapshot(user.getId(), user.getVersion(), user.getUsername(), user.getEmail(), user.getPassword(),
+                    user.getFirstName(), user.getLastName(), Set.copyOf(user.getRoles()), user.isAccountNonExpired(),
+                    user.isAccountNonLocked(), user.isCredentialsNonExpired(), user.isEnabled());
+        }
+
+        User toUser() {
+            User user = new User(username, email, password, firstName, lastName, new HashSet<>(roles));
+            user.setId(id);
+            user.setVersion(version);
+            user.setAccountNonExpired(accountNonExpired);
+            user.setAccountNonLocked(accountNonLocked);
+            user.setCredentialsNonExpired(credentialsNonExpired);
+            user.setEnabled(enabled);
+            return user;
+        }
+    }
+}
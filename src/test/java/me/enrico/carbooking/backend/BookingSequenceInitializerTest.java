@@ -0,0 +1,68 @@
+package me.enrico.carbooking.backend;
+
+import me.enrico.carbooking.model.Booking;
+import me.enrico.carbooking.model.Car;
+import me.enrico.carbooking.model.Role;
+import me.enrico.carbooking.model.User;
+import me.enrico.carbooking.repositories.BookingRepository;
+import me.enrico.carbooking.repositories.CarRepository;
+import me.enrico.carbooking.repositories.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        // Database separato: gli id riscritti dal test non toccano le strutture in memoria degli altri test
+        "spring.datasource.url=jdbc:h2:mem:booking-sequence;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1"
+})
+@ActiveProfiles("test")
+class BookingSequenceInitializerTest {
+
+    @Autowired
+    private BookingSequenceInitializer initializer;
+    @Autowired
+    private BookingRepository bookingRepository;
+    @Autowired
+    private CarRepository carRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void sequenceRestartsPastIdsWrittenBeforeTheMigration() {
+        Car car = carRepository.save(new Car("Sequenza", 4));
+        User user = userRepository.save(new User("sequenza", "sequenza@carbooking.local", "{noop}test", "Test", "Utente",
+                Set.of(Role.ROLE_USER)));
+        // Una prenotazione con un id ben oltre la sequenza, come quelle create con IDENTITY
+        Booking existing = bookingRepository.save(booking(car, user));
+        jdbcTemplate.update("UPDATE booking SET id = ? WHERE id = ?", 10_000L, existing.getId());
+
+        initializer.alignSequence();
+
+        // Hibernate tiene in memoria il blocco già assegnato: si controlla il blocco successivo della sequenza
+        long next = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR booking_seq", Long.class);
+        assertThat(next - 49).isGreaterThan(10_000L);
+    }
+
+    private static Booking booking(Car car, User user) {
+        LocalDateTime start = LocalDateTime.of(2020, 1, 1, 9, 0);
+        Booking booking = new Booking();
+        booking.setCar(car);
+        booking.setUser(user);
+        booking.setBookedAt(start.minusDays(1));
+        booking.setStartDateTime(start);
+        booking.setEndDateTime(start.plusHours(1));
+        booking.setDuration(1);
+        booking.setReason("Sequenza");
+        booking.setActive(false);
+        return booking;
+    }
+}
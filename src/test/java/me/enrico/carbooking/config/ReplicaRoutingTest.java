@@ -0,0 +1,113 @@
+package me.enrico.carbooking.config;
+
+import me.enrico.carbooking.dto.CarDTO;
+import me.enrico.carbooking.model.Car;
+import me.enrico.carbooking.repositories.CarRepository;
+import me.enrico.carbooking.service.CarService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Due database H2 separati fanno da primario e da replica: l'auto inserita solo sulla replica indica dove è andata
+ * la lettura. La replica non copia nulla dal primario, il ritardo è quello scritto dal test nella tabella {@code replica_lag}.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + ReplicaRoutingTest.PRIMARY_URL,
+        "carbooking.datasource.replicas.urls=" + ReplicaRoutingTest.REPLICA_URL,
+        "carbooking.datasource.replicas.max-lag=5s",
+        "carbooking.datasource.replicas.lag-query=SELECT seconds FROM replica_lag",
+        // Il ritardo si misura solo quando lo chiede il test
+        "carbooking.datasource.replicas.check-interval=3600000"
+})
+@ActiveProfiles("test")
+class ReplicaRoutingTest {
+
+    static final String PRIMARY_URL = "jdbc:h2:mem:routing-primary;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    static final String REPLICA_URL = "jdbc:h2:mem:routing-replica;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    private static final String REPLICA_ONLY_CAR = "Solo sulla replica";
+
+    @Autowired
+    @Qualifier("primaryDataSource")
+    private DataSource primaryDataSource;
+    @Autowired
+    private ReplicaLagMonitor lagMonitor;
+    @Autowired
+    private CarService carService;
+    @Autowired
+    private CarRepository carRepository;
+    @Autowired
+    private CacheManager cacheManager;
+
+    private JdbcTemplate primary;
+    private JdbcTemplate replica;
+
+    @BeforeEach
+    void setUp() {
+        primary = new JdbcTemplate(primaryDataSource);
+        replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+
+        // Stesso schema del primario, ma con dati diversi
+        replica.execute("DROP ALL OBJECTS");
+        primary.queryForList("SCRIPT NODATA", String.class).stream()
+                .filter(statement -> !statement.startsWith("CREATE USER"))
+                .forEach(replica::execute);
+        replica.update("INSERT INTO car (name, seats, available) VALUES (?, 4, TRUE)", REPLICA_ONLY_CAR);
+        replica.execute("CREATE TABLE replica_lag (seconds BIGINT)");
+        setReplicaLag(0);
+    }
+
+    @Test
+    void readOnlyTransactionReadsFromTheReplica() {
+        assertThat(lagMonitor.getHealthyReplicas()).containsExactly("replica-0");
+
+        assertThat(allCarNames()).contains(REPLICA_ONLY_CAR);
+    }
+
+    @Test
+    void replicaLaggingBeyondTheLimitFallsBackToThePrimary() {
+        setReplicaLag(10);
+
+        assertThat(lagMonitor.getHealthyReplicas()).isEmpty();
+        assertThat(allCarNames()).doesNotContain(REPLICA_ONLY_CAR);
+
+        // Rientrata nel limite, la replica torna a ricevere le letture
+        setReplicaLag(1);
+        assertThat(allCarNames()).contains(REPLICA_ONLY_CAR);
+    }
+
+    @Test
+    void writesGoToThePrimary() {
+        Car car = carRepository.save(new Car("Scritta sul primario", 5));
+
+        assertThat(primary.queryForObject("SELECT COUNT(*) FROM car WHERE id = ?", Long.class, car.getId())).isEqualTo(1);
+        assertThat(replica.queryForObject("SELECT COUNT(*) FROM car WHERE name = ?", Long.class, car.getName())).isZero();
+    }
+
+    @Test
+    void implicitSpringDataReadsStayOnThePrimary() {
+        assertThat(carRepository.findAll()).extracting(Car::getName).doesNotContain(REPLICA_ONLY_CAR);
+    }
+
+    private void setReplicaLag(long seconds) {
+        replica.update("DELETE FROM replica_lag");
+        replica.update("INSERT INTO replica_lag (seconds) VALUES (?)", seconds);
+        lagMonitor.check();
+    }
+
+    private List<String> allCarNames() {
+        cacheManager.getCache(CarService.CACHE_NAME).clear(); // Senza cache la lettura arriva al database
+        return carService.getAllCars().stream().map(CarDTO::getName).toList();
+    }
+}
@@ -0,0 +1,35 @@
+package me.enrico.carbooking.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "spring.threads.virtual.enabled=true",
+        // Database separato: lo schema ricreato da questo contesto non tocca quello degli altri test
+        "spring.datasource.url=jdbc:h2:mem:virtual-threads;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1"
+})
+@ActiveProfiles("test")
+class VirtualThreadsConfigTest {
+
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private Map<String, DataSource> dataSources;
+
+    @Test
+    void poolIsWrappedInExactlyOneBulkhead() {
+        assertThat(dataSources).hasSize(1);
+        assertThat(dataSource).isInstanceOf(BulkheadDataSource.class);
+        BulkheadDataSource bulkhead = (BulkheadDataSource) dataSource;
+        assertThat(bulkhead.getTargetDataSource()).isInstanceOf(HikariDataSource.class);
+        assertThat(bulkhead.getMaxPermits()).isEqualTo(((HikariDataSource) bulkhead.getTargetDataSource()).getMaximumPoolSize());
+    }
+}
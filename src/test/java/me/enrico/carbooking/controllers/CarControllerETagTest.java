@@ -0,0 +1,47 @@
+package me.enrico.carbooking.controllers;
+
+import me.enrico.carbooking.model.Car;
+import me.enrico.carbooking.repositories.CarRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class CarControllerETagTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private CarRepository carRepository;
+
+    @Test
+    void carUpdateChangesTheETag() throws Exception {
+        Car car = carRepository.save(new Car("Panda", 4));
+        String before = mockMvc.perform(get("/api/cars"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mockMvc.perform(get("/api/cars").header(HttpHeaders.IF_NONE_MATCH, before))
+                .andExpect(status().isNotModified());
+
+        car.setName("Panda 4x4");
+        carRepository.save(car);
+
+        String after = mockMvc.perform(get("/api/cars").header(HttpHeaders.IF_NONE_MATCH, before))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].name", hasItem("Panda 4x4")))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(after).isNotNull().isNotEqualTo(before);
+    }
+}
@@ -0,0 +1,117 @@
+package me.enrico.carbooking.controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.enrico.carbooking.model.Booking;
+import me.enrico.carbooking.model.Car;
+import me.enrico.carbooking.model.Role;
+import me.enrico.carbooking.model.User;
+import me.enrico.carbooking.repositories.BookingRepository;
+import me.enrico.carbooking.repositories.CarRepository;
+import me.enrico.carbooking.repositories.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class CarControllerExportTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private BookingRepository bookingRepository;
+    @Autowired
+    private CarRepository carRepository;
+    @Autowired
+    private UserRepository userRepository;
+
+    private User user;
+    private Booking occupied;
+    private Booking future;
+
+    @BeforeEach
+    void setUp() {
+        Car car = carRepository.save(new Car("Esportazione", 4));
+        user = userRepository.findByUsername("esportazione").orElseGet(() -> userRepository.save(
+                new User("esportazione", "esportazione@carbooking.local", "{noop}test", "Test", "Utente", Set.of(Role.ROLE_USER))));
+        LocalDateTime now = LocalDateTime.now(ZoneId.of("Europe/Rome")).truncatedTo(ChronoUnit.MINUTES);
+        occupied = bookingRepository.save(booking(car, now.minusHours(1), now.plusHours(1)));
+        future = bookingRepository.save(booking(car, now.plusDays(200), now.plusDays(200).plusHours(2)));
+    }
+
+    @Test
+    void occupiedExportWritesOneJsonObjectPerLine() throws Exception {
+        List<JsonNode> lines = export("/api/cars/occupied/export");
+
+        assertThat(lines).extracting(line -> line.get("id").asLong()).contains(occupied.getId()).doesNotContain(future.getId());
+    }
+
+    @Test
+    void futureExportWritesOneJsonObjectPerLine() throws Exception {
+        List<JsonNode> lines = export("/api/cars/future-bookings/export");
+
+        assertThat(lines).extracting(line -> line.get("id").asLong()).contains(future.getId()).doesNotContain(occupied.getId());
+        assertThat(lines).filteredOn(line -> line.get("id").asLong() == future.getId())
+                .singleElement()
+                .satisfies(line -> {
+                    assertThat(line.get("car").get("name").asText()).isEqualTo("Esportazione");
+                    assertThat(line.get("bookedByUsername").asText()).isEqualTo("esportazione");
+                });
+    }
+
+    private List<JsonNode> export(String path) throws Exception {
+        MvcResult started = mockMvc.perform(get(path).with(user(user)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+
+        assertThat(body).endsWith("\n");
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            JsonNode node = objectMapper.readTree(line);
+            assertThat(node.isObject()).as("riga NDJSON: %s", line).isTrue();
+            lines.add(node);
+        }
+        return lines;
+    }
+
+    private Booking booking(Car car, LocalDateTime start, LocalDateTime end) {
+        Booking booking = new Booking();
+        booking.setCar(car);
+        booking.setUser(user);
+        booking.setBookedAt(start.minusDays(1));
+        booking.setStartDateTime(start);
+        booking.setEndDateTime(end);
+        booking.setDuration((int) ChronoUnit.HOURS.between(start, end));
+        booking.setReason("Esportazione");
+        return booking;
+    }
+}
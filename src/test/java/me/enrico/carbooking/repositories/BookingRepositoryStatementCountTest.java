@@ -0,0 +1,141 @@
+package me.enrico.carbooking.repositories;
+
+import jakarta.persistence.EntityManagerFactory;
+import me.enrico.carbooking.config.CachingConfig;
+import me.enrico.carbooking.dto.BookingView;
+import me.enrico.carbooking.model.Booking;
+import me.enrico.carbooking.model.Car;
+import me.enrico.carbooking.model.Role;
+import me.enrico.carbooking.model.User;
+import me.enrico.carbooking.service.CarService;
+import me.enrico.carbooking.service.StatisticsService;
+import me.enrico.carbooking.service.UserDetailsCache;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Gli elenchi di prenotazioni devono costare una sola query, qualunque sia il numero di righe, di utenti e di auto.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        // Database separato: lo schema ricreato da questo contesto non tocca quello dei test @SpringBootTest
+        "spring.datasource.url=jdbc:h2:mem:booking-statements;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+@Import({CachingConfig.class, CarService.class, UserDetailsCache.class, StatisticsService.class}) // Usati dagli entity listener di Car e User
+class BookingRepositoryStatementCountTest {
+
+    private static final int USERS = 5;
+    private static final int BOOKINGS_PER_USER = 4;
+
+    @Autowired
+    private BookingRepository bookingRepository;
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private LocalDateTime now;
+
+    @BeforeEach
+    void setUp() {
+        now = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS);
+        for (int u = 0; u < USERS; u++) {
+            User user = entityManager.persist(new User("elenchi" + u, "elenchi" + u + "@carbooking.local", "{noop}test",
+                    "Test", "Utente", new HashSet<>(Set.of(Role.ROLE_USER))));
+            for (int b = 0; b < BOOKINGS_PER_USER; b++) {
+                Car car = entityManager.persist(new Car("Elenchi " + u + "-" + b, 4));
+                // Metà in corso, metà future
+                LocalDateTime start = b % 2 == 0 ? now.minusHours(1) : now.plusDays(1 + b);
+                entityManager.persist(booking(car, user, start, start.plusHours(3)));
+            }
+        }
+        entityManager.flush();
+        entityManager.clear(); // Nessuna entità già nel contesto: le relazioni lazy andrebbero lette dal database
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void occupiedPageIsOneStatement() {
+        List<BookingView> page = countingStatements(() ->
+                bookingRepository.findCurrentlyOccupiedPage(now, LocalDateTime.of(1970, 1, 1, 0, 0), 0L, PageRequest.of(0, 50)));
+
+        assertThat(page).hasSize(USERS * BOOKINGS_PER_USER / 2);
+    }
+
+    @Test
+    void futurePageIsOneStatement() {
+        List<BookingView> page = countingStatements(() ->
+                bookingRepository.findFutureBookingsPage(now, LocalDateTime.of(1970, 1, 1, 0, 0), 0L, PageRequest.of(0, 50)));
+
+        assertThat(page).hasSize(USERS * BOOKINGS_PER_USER / 2);
+    }
+
+    @Test
+    void timelineLoadIsOneStatement() {
+        List<BookingView> views = countingStatements(() -> bookingRepository.findActiveViewsEndingAfter(now));
+
+        assertThat(views).hasSize(USERS * BOOKINGS_PER_USER);
+    }
+
+    @Test
+    void exportStreamsAreOneStatement() {
+        List<BookingView> occupied = countingStatements(() -> {
+            try (Stream<BookingView> views = bookingRepository.streamCurrentlyOccupied(now)) {
+                return views.toList();
+            }
+        });
+        assertThat(occupied).hasSize(USERS * BOOKINGS_PER_USER / 2);
+
+        statistics.clear();
+        List<BookingView> future = countingStatements(() -> {
+            try (Stream<BookingView> views = bookingRepository.streamFutureBookings(now)) {
+                return views.toList();
+            }
+        });
+        assertThat(future).hasSize(USERS * BOOKINGS_PER_USER / 2);
+    }
+
+    private List<BookingView> countingStatements(Supplier<List<BookingView>> query) {
+        List<BookingView> views = query.get();
+        // Anche la conversione in DTO non deve toccare il database
+        views.forEach(view -> assertThat(view.toBookingDTO().getBookedByUsername()).startsWith("elenchi"));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        return views;
+    }
+
+    private static Booking booking(Car car, User user, LocalDateTime start, LocalDateTime end) {
+        Booking booking = new Booking();
+        booking.setCar(car);
+        booking.setUser(user);
+        booking.setBookedAt(start.minusDays(1));
+        booking.setStartDateTime(start);
+        booking.setEndDateTime(end);
+        booking.setDuration((int) ChronoUnit.HOURS.between(start, end));
+        booking.setReason("Lavoro");
+        return booking;
+    }
+}
@@ -0,0 +1,66 @@
+package me.enrico.carbooking.service;
+
+import me.enrico.carbooking.dto.AvailableCarDTO;
+import me.enrico.carbooking.dto.CarDTO;
+import me.enrico.carbooking.model.BookingSlot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AvailabilityServiceTest {
+
+    private static final LocalDateTime FROM = LocalDateTime.of(2030, 1, 1, 9, 0);
+    private static final LocalDateTime TO = FROM.plusHours(2);
+
+    private CarOccupancyTracker occupancyTracker;
+    private AvailabilityService availabilityService;
+
+    @BeforeEach
+    void setUp() {
+        List<CarDTO> fleet = List.of(car(1L, 4), car(2L, 4), car(3L, 2));
+        CarService carService = new CarService(null, null) {
+            @Override
+            public List<CarDTO> getAllCars() {
+                return fleet;
+            }
+        };
+        BookingTimelineIndex timelineIndex = new BookingTimelineIndex(null);
+        // L'auto 2 è occupata fino alle 12
+        timelineIndex.reserve(new BookingSlot(1L, 2L, FROM.minusHours(1), FROM.plusHours(3)));
+        occupancyTracker = new CarOccupancyTracker(new ActiveBookingTimeline(null));
+        availabilityService = new AvailabilityService(carService, timelineIndex, occupancyTracker);
+    }
+
+    @AfterEach
+    void tearDown() {
+        occupancyTracker.shutdown();
+    }
+
+    @Test
+    void returnsOnlyFreeCarsWithEnoughSeats() {
+        List<AvailableCarDTO> results = availabilityService.findAvailable(FROM, TO, 4, false);
+
+        assertThat(results).extracting(result -> result.car().getId()).containsExactly(1L);
+        assertThat(results).allSatisfy(result -> assertThat(result.free()).isTrue());
+    }
+
+    @Test
+    void includeBusyAddsOccupiedCarsWithTheirNextFreeSlot() {
+        List<AvailableCarDTO> results = availabilityService.findAvailable(FROM, TO, 4, true);
+
+        assertThat(results).extracting(result -> result.car().getId()).containsExactly(1L, 2L);
+        AvailableCarDTO busy = results.get(1);
+        assertThat(busy.free()).isFalse();
+        assertThat(busy.nextFreeStart()).isAfter(FROM.plusHours(3));
+        assertThat(busy.nextFreeEnd()).isEqualTo(busy.nextFreeStart().plusHours(2));
+    }
+
+    private static CarDTO car(Long id, int seats) {
+        return CarDTO.builder().id(id).name("Auto " + id).seats(seats).available(true).build();
+    }
+}
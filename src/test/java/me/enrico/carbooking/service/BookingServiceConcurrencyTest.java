@@ -0,0 +1,135 @@
+package me.enrico.carbooking.service;
+
+import me.enrico.carbooking.event.BookingEvent;
+import me.enrico.carbooking.model.Booking;
+import me.enrico.carbooking.model.BookingSlot;
+import me.enrico.carbooking.model.Car;
+import me.enrico.carbooking.model.MailOutbox;
+import me.enrico.carbooking.model.Role;
+import me.enrico.carbooking.model.User;
+import me.enrico.carbooking.repositories.BookingRepository;
+import me.enrico.carbooking.repositories.CarRepository;
+import me.enrico.carbooking.repositories.MailOutboxRepository;
+import me.enrico.carbooking.repositories.UserRepository;
+import me.enrico.carbooking.request.CarBookingRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Richieste concorrenti sulla stessa auto attraverso {@link BookingService}, con transazioni e lock reali su H2.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class BookingServiceConcurrencyTest {
+
+    private static final int THREADS = 16;
+
+    @Autowired
+    private BookingService bookingService;
+    @Autowired
+    private CarRepository carRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private BookingRepository bookingRepository;
+    @Autowired
+    private MailOutboxRepository mailOutboxRepository;
+
+    @Test
+    void concurrentBookingsOfTheSameCarNeverOverlap() throws Exception {
+        Car car = carRepository.save(new Car("Concorrenza", 4));
+        User user = user("concorrenza");
+        LocalDateTime origin = LocalDateTime.now().plusDays(30).truncatedTo(ChronoUnit.HOURS);
+
+        List<Boolean> outcomes = runConcurrently(THREADS * 10, () -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            LocalDateTime start = origin.plusHours(random.nextInt(48));
+            try {
+                bookingService.createBooking(car, request(start, start.plusHours(1 + random.nextInt(4))), user);
+                return true;
+            } catch (IllegalStateException e) {
+                return false;
+            }
+        });
+
+        List<BookingSlot> persisted = new ArrayList<>(bookingRepository.findActiveSlotsOverlapping(car.getId(), origin, origin.plusDays(3)));
+        assertThat(persisted).hasSize((int) outcomes.stream().filter(Boolean::booleanValue).count()).isNotEmpty();
+        persisted.sort(Comparator.comparing(BookingSlot::startDateTime));
+        for (int i = 1; i < persisted.size(); i++) {
+            BookingSlot previous = persisted.get(i - 1);
+            BookingSlot current = persisted.get(i);
+            assertThat(previous.overlaps(current.startDateTime(), current.endDateTime()))
+                    .as("%s e %s si sovrappongono", previous.bookingId(), current.bookingId())
+                    .isFalse();
+        }
+    }
+
+    @Test
+    void concurrentCancellationsDeactivateOnce() throws Exception {
+        Car car = carRepository.save(new Car("Annullamenti", 4));
+        User user = user("annullamenti");
+        LocalDateTime start = LocalDateTime.now().plusDays(60).truncatedTo(ChronoUnit.HOURS);
+        Booking booking = bookingService.createBooking(car, request(start, start.plusHours(2)), user);
+
+        List<Boolean> outcomes = runConcurrently(THREADS, () -> {
+            Optional<Booking> cancelled = bookingService.deactivateBooking(booking, BookingEvent.Type.CANCELLED, "annullata", "test");
+            return cancelled.isPresent();
+        });
+
+        assertThat(outcomes).containsOnlyOnce(true);
+        assertThat(bookingRepository.findById(booking.getId())).hasValueSatisfying(saved -> assertThat(saved.isActive()).isFalse());
+        assertThat(mailOutboxRepository.findAll())
+                .filteredOn(mail -> mail.getBookingId().equals(booking.getId()) && mail.getType() == MailOutbox.Type.BOOKING_STATUS_CHANGE)
+                .hasSize(1);
+    }
+
+    private static List<Boolean> runConcurrently(int tasks, Callable<Boolean> task) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(THREADS)) {
+            for (int i = 0; i < tasks; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+        }
+        List<Boolean> outcomes = new ArrayList<>();
+        for (Future<Boolean> future : futures) {
+            outcomes.add(future.get());
+        }
+        return outcomes;
+    }
+
+    private User user(String username) {
+        return userRepository.save(new User(username, username + "@carbooking.local", "{noop}test", "Test", "Utente",
+                Set.of(Role.ROLE_USER)));
+    }
+
+    private static CarBookingRequest request(LocalDateTime start, LocalDateTime end) {
+        CarBookingRequest request = new CarBookingRequest();
+        request.setStartDateTime(start);
+        request.setEndDateTime(end);
+        request.setReason("Lavoro");
+        return request;
+    }
+}
@@ -0,0 +1,106 @@
+package me.enrico.carbooking.service;
+
+import me.enrico.carbooking.model.BookingSlot;
+import me.enrico.carbooking.repositories.BookingRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CarTimelineTest {
+
+    private static final LocalDateTime ORIGIN = LocalDateTime.of(2030, 1, 1, 0, 0);
+
+    private CarTimeline timeline;
+
+    @BeforeEach
+    void setUp() {
+        timeline = new CarTimeline();
+        // Una prenotazione di tre settimane seguita da prenotazioni di un'ora, una ogni due ore
+        timeline.add(new BookingSlot(1L, 1L, ORIGIN, ORIGIN.plusWeeks(3)));
+        LocalDateTime afterLong = ORIGIN.plusWeeks(3).plusHours(1);
+        for (long i = 0; i < 1000; i++) {
+            LocalDateTime start = afterLong.plusHours(2 * i);
+            timeline.add(new BookingSlot(100 + i, 1L, start, start.plusHours(1)));
+        }
+    }
+
+    @Test
+    void findsSlotStartingBeforeAndCoveringTheRequest() {
+        assertThat(timeline.findConflict(ORIGIN.plusDays(10), ORIGIN.plusDays(10).plusHours(2)))
+                .hasValueSatisfying(slot -> assertThat(slot.bookingId()).isEqualTo(1L));
+    }
+
+    @Test
+    void findsSlotStartingInsideTheRequest() {
+        LocalDateTime firstShort = ORIGIN.plusWeeks(3).plusHours(1);
+        assertThat(timeline.findConflict(firstShort.minusMinutes(30), firstShort.plusMinutes(10)))
+                .hasValueSatisfying(slot -> assertThat(slot.bookingId()).isEqualTo(100L));
+    }
+
+    @Test
+    void touchingEndpointsConflict() {
+        LocalDateTime firstShort = ORIGIN.plusWeeks(3).plusHours(1);
+        assertThat(timeline.findConflict(firstShort.minusMinutes(30), firstShort)).isPresent();
+        assertThat(timeline.findConflict(firstShort.plusHours(1), firstShort.plusHours(1).plusMinutes(10))).isPresent();
+    }
+
+    @Test
+    void gapBetweenSlotsIsFree() {
+        LocalDateTime gap = ORIGIN.plusWeeks(3).plusHours(2);
+        assertThat(timeline.findConflict(gap.plusMinutes(10), gap.plusMinutes(50))).isEmpty();
+        assertThat(timeline.findConflict(ORIGIN.minusHours(2), ORIGIN.minusHours(1))).isEmpty();
+    }
+
+    @Test
+    void removedSlotNoLongerConflicts() {
+        timeline.remove(1L);
+        assertThat(timeline.findConflict(ORIGIN.plusDays(10), ORIGIN.plusDays(10).plusHours(2))).isEmpty();
+    }
+
+    @Test
+    void nextFreeStartSkipsConsecutiveSlots() {
+        LocalDateTime start = ORIGIN.plusDays(1);
+        assertThat(timeline.nextFreeStart(start, start.plusMinutes(30)))
+                .isEqualTo(ORIGIN.plusWeeks(3).plusMinutes(1));
+    }
+
+    @Test
+    void conflictHiddenBehindALongerOverlappingSlotIsFound() {
+        // Righe sovrapposte scritte prima del lock per auto: la prenotazione corta inizia dentro quella lunga
+        BookingRepository bookingRepository = mock(BookingRepository.class);
+        when(bookingRepository.findActiveSlots()).thenReturn(List.of(
+                new BookingSlot(1L, 7L, ORIGIN, ORIGIN.plusDays(10)),
+                new BookingSlot(2L, 7L, ORIGIN.plusDays(2), ORIGIN.plusDays(3))));
+        BookingTimelineIndex index = new BookingTimelineIndex(bookingRepository);
+        index.warmUp();
+
+        // L'ultimo slot che inizia prima del periodo è quello corto, ma lo copre quello lungo
+        LocalDateTime start = ORIGIN.plusDays(5);
+        assertThat(index.findConflict(7L, start, start.plusHours(2)))
+                .hasValueSatisfying(slot -> assertThat(slot.bookingId()).isEqualTo(1L));
+        assertThat(index.nextFreeStart(7L, start, start.plusHours(2))).isEqualTo(ORIGIN.plusDays(10).plusMinutes(1));
+    }
+
+    @Test
+    void removingTheLongerOverlappingSlotLeavesTheOthersSearchable() {
+        CarTimeline overlapping = new CarTimeline();
+        overlapping.add(new BookingSlot(1L, 1L, ORIGIN, ORIGIN.plusDays(10)));
+        overlapping.add(new BookingSlot(2L, 1L, ORIGIN.plusDays(2), ORIGIN.plusDays(3)));
+        overlapping.add(new BookingSlot(3L, 1L, ORIGIN.plusDays(8), ORIGIN.plusDays(12)));
+
+        overlapping.remove(1L);
+
+        assertThat(overlapping.size()).isEqualTo(2);
+        assertThat(overlapping.findConflict(ORIGIN.plusDays(5), ORIGIN.plusDays(6))).isEmpty();
+        assertThat(overlapping.findConflict(ORIGIN.plusDays(2).plusHours(5), ORIGIN.plusDays(2).plusHours(6)))
+                .hasValueSatisfying(slot -> assertThat(slot.bookingId()).isEqualTo(2L));
+        assertThat(overlapping.findConflict(ORIGIN.plusDays(11), ORIGIN.plusDays(11).plusHours(1)))
+                .hasValueSatisfying(slot -> assertThat(slot.bookingId()).isEqualTo(3L));
+    }
+}
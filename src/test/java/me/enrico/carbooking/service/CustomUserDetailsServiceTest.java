@@ -0,0 +1,67 @@
+package me.enrico.carbooking.service;
+
+import me.enrico.carbooking.model.Role;
+import me.enrico.carbooking.model.User;
+import me.enrico.carbooking.repositories.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class CustomUserDetailsServiceTest {
+
+    @Autowired
+    private CustomUserDetailsService userDetailsService;
+    @Autowired
+    private UserDetailsCache userCache;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void renamingAUserThroughJpaEvictsTheCachedEntry() {
+        User user = userRepository.save(new User("rinomina", "rinomina@carbooking.local", "{noop}test", "Test", "Utente",
+                new HashSet<>(Set.of(Role.ROLE_USER))));
+        userDetailsService.loadUserByUsername("rinomina");
+        assertThat(userCache.getUserFromCache("rinomina")).isNotNull();
+
+        user.setUsername("rinominato");
+        userRepository.save(user);
+
+        assertThat(userCache.getUserFromCache("rinomina")).isNull();
+        assertThat(userDetailsService.loadUserByUsername("rinominato").getUsername()).isEqualTo("rinominato");
+    }
+
+    @Test
+    void changingOnlyTheRolesOfAUserEvictsTheCachedEntry() {
+        userRepository.save(new User("ruoli", "ruoli@carbooking.local", "{noop}test", "Test", "Utente",
+                new HashSet<>(Set.of(Role.ROLE_USER))));
+        userDetailsService.loadUserByUsername("ruoli");
+        assertThat(userCache.getUserFromCache("ruoli")).isNotNull();
+
+        transactionTemplate.executeWithoutResult(status ->
+                userRepository.findByUsername("ruoli").orElseThrow().getRoles().add(Role.ROLE_ADMIN));
+
+        assertThat(userCache.getUserFromCache("ruoli")).isNull();
+        assertThat(userDetailsService.loadUserByUsername("ruoli").getAuthorities())
+                .extracting(Object::toString)
+                .containsExactlyInAnyOrder("ROLE_USER", "ROLE_ADMIN");
+
+        // Anche la revoca di un ruolo vale subito, senza attendere la scadenza della voce in cache
+        transactionTemplate.executeWithoutResult(status ->
+                userRepository.findByUsername("ruoli").orElseThrow().getRoles().remove(Role.ROLE_ADMIN));
+
+        assertThat(userDetailsService.loadUserByUsername("ruoli").getAuthorities())
+                .extracting(Object::toString)
+                .containsExactly("ROLE_USER");
+    }
+}
@@ -0,0 +1,87 @@
+package me.enrico.carbooking.service;
+
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetup;
+import jakarta.mail.internet.MimeMessage;
+import me.enrico.carbooking.model.Booking;
+import me.enrico.carbooking.model.Car;
+import me.enrico.carbooking.model.MailOutbox;
+import me.enrico.carbooking.model.Role;
+import me.enrico.carbooking.model.User;
+import me.enrico.carbooking.repositories.CarRepository;
+import me.enrico.carbooking.repositories.MailOutboxRepository;
+import me.enrico.carbooking.repositories.UserRepository;
+import me.enrico.carbooking.request.CarBookingRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Un giro della outbox contro un server SMTP GreenMail in-process.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class MailDispatcherTest {
+
+    @Autowired
+    private MailDispatcher mailDispatcher;
+    @Autowired
+    private BookingService bookingService;
+    @Autowired
+    private CarRepository carRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private MailOutboxRepository mailOutboxRepository;
+
+    private GreenMail smtp;
+
+    @BeforeEach
+    void startSmtp() {
+        smtp = new GreenMail(new ServerSetup(3025, "localhost", ServerSetup.PROTOCOL_SMTP));
+        smtp.setUser("test@carbooking.local", "test"); // Le credenziali di spring.mail nel profilo test
+        smtp.start();
+        // Il contesto è condiviso con gli altri test: si parte da una outbox vuota
+        mailOutboxRepository.deleteAll();
+    }
+
+    @AfterEach
+    void stopSmtp() {
+        smtp.stop();
+    }
+
+    @Test
+    void dispatchesOneBatchAndMarksItSent() throws Exception {
+        Car car = carRepository.save(new Car("Outbox", 4));
+        User user = userRepository.save(new User("outbox", "outbox@carbooking.local", "{noop}test", "Mario", "Rossi",
+                Set.of(Role.ROLE_USER)));
+        LocalDateTime start = LocalDateTime.now().plusDays(90).truncatedTo(ChronoUnit.HOURS);
+        CarBookingRequest request = new CarBookingRequest();
+        request.setStartDateTime(start);
+        request.setEndDateTime(start.plusHours(2));
+        request.setReason("Lavoro");
+        Booking booking = bookingService.createBooking(car, request, user);
+
+        assertThat(mailDispatcher.dispatchBatch()).isEqualTo(1);
+
+        MimeMessage[] received = smtp.getReceivedMessages();
+        assertThat(received).hasSize(1);
+        assertThat(received[0].getAllRecipients()[0].toString()).isEqualTo("outbox@carbooking.local");
+        assertThat(received[0].getSubject()).isEqualTo("Conferma Prenotazione Auto");
+        assertThat(mailOutboxRepository.findAll()).singleElement().satisfies(mail -> {
+            assertThat(mail.getBookingId()).isEqualTo(booking.getId());
+            assertThat(mail.getType()).isEqualTo(MailOutbox.Type.BOOKING_CONFIRMATION);
+            assertThat(mail.getStatus()).isEqualTo(MailOutbox.Status.SENT);
+            assertThat(mail.getSentAt()).isNotNull();
+        });
+    }
+}
@@ -0,0 +1,117 @@
+package me.enrico.carbooking.service;
+
+import me.enrico.carbooking.model.Booking;
+import me.enrico.carbooking.model.Car;
+import me.enrico.carbooking.model.Role;
+import me.enrico.carbooking.model.User;
+import me.enrico.carbooking.repositories.BookingRepository;
+import me.enrico.carbooking.repositories.CarRepository;
+import me.enrico.carbooking.repositories.UserRepository;
+import me.enrico.carbooking.request.CarBookingRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Le prenotazioni salvate direttamente con il repository, senza eventi, simulano le modifiche di un'altra istanza.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class ReadModelReconcilerTest {
+
+    @Autowired
+    private ReadModelReconciler reconciler;
+    @Autowired
+    private BookingService bookingService;
+    @Autowired
+    private BookingTimelineIndex timelineIndex;
+    @Autowired
+    private ActiveBookingTimeline activeBookingTimeline;
+    @Autowired
+    private CarOccupancyTracker carOccupancyTracker;
+    @Autowired
+    private StatisticsService statisticsService;
+    @Autowired
+    private BookingRepository bookingRepository;
+    @Autowired
+    private CarRepository carRepository;
+    @Autowired
+    private UserRepository userRepository;
+
+    private Car car;
+    private User user;
+    private LocalDateTime start;
+
+    @BeforeEach
+    void setUp() {
+        car = carRepository.save(new Car("Riconciliazione", 4));
+        user = userRepository.findByUsername("riconciliazione").orElseGet(() -> userRepository.save(
+                new User("riconciliazione", "riconciliazione@carbooking.local", "{noop}test", "Test", "Utente", Set.of(Role.ROLE_USER))));
+        start = LocalDateTime.now().plusDays(120).truncatedTo(ChronoUnit.HOURS);
+        reconciler.reconcile(); // Allinea le strutture alle prenotazioni lasciate dagli altri test
+    }
+
+    @Test
+    void bookingCreatedElsewhereAppearsAfterReconcile() {
+        long totalBefore = statisticsService.getStatistics().getTotalBookings();
+        Booking remote = bookingRepository.save(booking(start, start.plusHours(2)));
+        assertThat(timelineIndex.findConflict(car.getId(), start, start.plusHours(1))).isEmpty();
+
+        reconciler.reconcile();
+
+        assertThat(timelineIndex.findConflict(car.getId(), start, start.plusHours(1)))
+                .hasValueSatisfying(slot -> assertThat(slot.bookingId()).isEqualTo(remote.getId()));
+        assertThat(activeBookingTimeline.futureAt(LocalDateTime.now()))
+                .anySatisfy(booking -> assertThat(booking.getId()).isEqualTo(remote.getId()));
+        assertThat(statisticsService.getStatistics().getTotalBookings()).isEqualTo(totalBefore + 1);
+    }
+
+    @Test
+    void bookingCancelledElsewhereDisappearsAfterReconcile() {
+        Booking remote = bookingRepository.save(booking(start, start.plusHours(2)));
+        reconciler.reconcile();
+
+        remote.setActive(false);
+        bookingRepository.save(remote);
+        reconciler.reconcile();
+
+        assertThat(timelineIndex.findConflict(car.getId(), start, start.plusHours(1))).isEmpty();
+        assertThat(activeBookingTimeline.futureAt(LocalDateTime.now()))
+                .noneSatisfy(booking -> assertThat(booking.getId()).isEqualTo(remote.getId()));
+    }
+
+    @Test
+    void localBookingsDoNotTriggerAReload() {
+        CarBookingRequest request = new CarBookingRequest();
+        request.setStartDateTime(start);
+        request.setEndDateTime(start.plusHours(2));
+        request.setReason("Lavoro");
+        bookingService.createBooking(car, request, user);
+        long occupancyVersion = carOccupancyTracker.getVersion();
+
+        reconciler.reconcile();
+
+        // Il ricaricamento dello stato di occupazione ne cambierebbe la versione
+        assertThat(carOccupancyTracker.getVersion()).isEqualTo(occupancyVersion);
+    }
+
+    private Booking booking(LocalDateTime from, LocalDateTime to) {
+        Booking booking = new Booking();
+        booking.setCar(car);
+        booking.setUser(user);
+        booking.setBookedAt(LocalDateTime.now());
+        booking.setStartDateTime(from);
+        booking.setEndDateTime(to);
+        booking.setDuration((int) ChronoUnit.HOURS.between(from, to));
+        booking.setReason("Altra istanza");
+        return booking;
+    }
+}
@@ -0,0 +1,141 @@
+package me.enrico.carbooking.service;
+
+import me.enrico.carbooking.dto.BookingDTO;
+import me.enrico.carbooking.dto.BookingStatisticsRow;
+import me.enrico.carbooking.dto.CarDTO;
+import me.enrico.carbooking.event.BookingEvent;
+import me.enrico.carbooking.model.Car;
+import me.enrico.carbooking.model.User;
+import me.enrico.carbooking.repositories.BookingRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class StatisticsServiceTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2030, 1, 1, 9, 0);
+    private static final Long CAR_ID = 10L;
+    private static final Long USER_ID = 20L;
+
+    private BookingRepository bookingRepository;
+    private StatisticsService statisticsService;
+
+    @BeforeEach
+    void setUp() {
+        bookingRepository = mock(BookingRepository.class);
+        when(bookingRepository.findAllStatisticsRows()).thenReturn(List.of(row(1L)));
+        statisticsService = new StatisticsService(bookingRepository);
+        statisticsService.rebuild();
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void eventDeliveredDuringTheReadOfABookingAlreadyReadIsNotCountedTwice() {
+        // L'evento della prenotazione 2 arriva mentre la ricostruzione legge già la sua riga
+        when(bookingRepository.findAllStatisticsRows()).thenAnswer(invocation -> {
+            statisticsService.onBookingEvent(created(2L));
+            return List.of(row(1L), row(2L));
+        });
+
+        statisticsService.rebuild();
+
+        assertThat(statisticsService.getStatistics().getTotalBookings()).isEqualTo(2);
+    }
+
+    @Test
+    void eventDeliveredDuringTheReadOfABookingNotYetReadIsReplayed() {
+        // La prenotazione 2 viene confermata dopo la lettura, ma il suo evento arriva prima della sostituzione
+        when(bookingRepository.findAllStatisticsRows()).thenAnswer(invocation -> {
+            List<BookingStatisticsRow> rows = List.of(row(1L));
+            statisticsService.onBookingEvent(created(2L));
+            return rows;
+        });
+
+        statisticsService.rebuild();
+
+        assertThat(statisticsService.getStatistics().getTotalBookings()).isEqualTo(2);
+    }
+
+    @Test
+    void eventDeliveredAfterTheRebuildOfABookingAlreadyReadIsSkipped() {
+        // La prenotazione 2 è confermata e letta dalla ricostruzione, ma il suo evento arriva solo dopo
+        TransactionSynchronizationManager.initSynchronization();
+        statisticsService.trackUncommitted(created(2L));
+        List<TransactionSynchronization> synchronizations = new ArrayList<>(TransactionSynchronizationManager.getSynchronizations());
+        TransactionSynchronizationManager.clearSynchronization();
+        when(bookingRepository.findAllStatisticsRows()).thenReturn(List.of(row(1L), row(2L)));
+
+        statisticsService.rebuild();
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        statisticsService.onBookingEvent(created(2L));
+
+        assertThat(statisticsService.getStatistics().getTotalBookings()).isEqualTo(2);
+
+        // Le prenotazioni successive tornano a essere contate normalmente
+        statisticsService.onBookingEvent(created(3L));
+        assertThat(statisticsService.getStatistics().getTotalBookings()).isEqualTo(3);
+    }
+
+    @Test
+    void renamingACarKeepsItsCountsTogetherUnderTheNewName() {
+        Car car = new Car("Panda 4x4", 4);
+        car.setId(CAR_ID);
+        statisticsService.onCarChanged(car);
+        // Evento creato prima della rinomina, con il nome vecchio
+        statisticsService.onBookingEvent(created(2L));
+
+        assertThat(statisticsService.getStatistics().getBookingsPerCar()).isEqualTo(Map.of("Panda 4x4", 2L));
+        assertThat(statisticsService.getStatistics().getMostUsedCarPerUser()).isEqualTo(Map.of("mario", "Panda 4x4"));
+    }
+
+    @Test
+    void renamingAUserKeepsItsCountsTogetherUnderTheNewUsername() {
+        User user = new User();
+        user.setId(USER_ID);
+        user.setUsername("mario.rossi");
+        statisticsService.onUserChanged(user);
+        statisticsService.onBookingEvent(created(2L));
+
+        assertThat(statisticsService.getStatistics().getBookingsPerUser()).isEqualTo(Map.of("mario.rossi", 2L));
+        assertThat(statisticsService.getStatistics().getHoursPerUser()).isEqualTo(Map.of("mario.rossi", 4.0));
+    }
+
+    private static BookingStatisticsRow row(Long id) {
+        return BookingStatisticsRow.of(booking(id));
+    }
+
+    private static BookingEvent created(Long id) {
+        return new BookingEvent(BookingEvent.Type.CREATED, booking(id));
+    }
+
+    private static BookingDTO booking(Long id) {
+        return BookingDTO.builder()
+                .id(id)
+                .car(CarDTO.builder().id(CAR_ID).name("Panda").seats(4).available(true).build())
+                .bookedByUsername("mario")
+                .bookedByUserId(USER_ID)
+                .startDateTime(START)
+                .endDateTime(START.plusHours(2))
+                .duration(2)
+                .reason("Lavoro")
+                .active(true)
+                .build();
+    }
+}
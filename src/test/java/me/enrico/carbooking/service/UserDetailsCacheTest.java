@@ -0,0 +1,64 @@
+package me.enrico.carbooking.service;
+
+import me.enrico.carbooking.model.Role;
+import me.enrico.carbooking.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserDetailsCacheTest {
+
+    private UserDetailsCache userCache;
+
+    @BeforeEach
+    void setUp() {
+        userCache = new UserDetailsCache(new CaffeineCacheManager(UserDetailsCache.CACHE_NAME));
+    }
+
+    @Test
+    void changesToAReturnedUserDoNotReachTheCache() {
+        userCache.putUserInCache(user(1L, "mario"));
+
+        User returned = (User) userCache.getUserFromCache("mario");
+        returned.setPassword("{noop}altra");
+        returned.getRoles().add(Role.ROLE_ADMIN);
+
+        User again = (User) userCache.getUserFromCache("mario");
+        assertThat(again).isNotSameAs(returned);
+        assertThat(again.getId()).isEqualTo(1L);
+        assertThat(again.getPassword()).isEqualTo("{noop}test");
+        assertThat(again.getRoles()).containsExactly(Role.ROLE_USER);
+    }
+
+    @Test
+    void renamedUserIsEvictedUnderTheOldUsername() {
+        userCache.putUserInCache(user(1L, "mario"));
+
+        userCache.onUserChanged(user(1L, "mario.rossi"));
+
+        assertThat(userCache.getUserFromCache("mario")).isNull();
+    }
+
+    @Test
+    void otherUsersStayCached() {
+        userCache.putUserInCache(user(1L, "mario"));
+        userCache.putUserInCache(user(2L, "luigi"));
+
+        userCache.onUserChanged(user(1L, "mario"));
+
+        assertThat(userCache.getUserFromCache("mario")).isNull();
+        assertThat(userCache.getUserFromCache("luigi")).isNotNull();
+    }
+
+    private static User user(Long id, String username) {
+        User user = new User(username, username + "@carbooking.local", "{noop}test", "Test", "Utente",
+                new HashSet<>(Set.of(Role.ROLE_USER)));
+        user.setId(id);
+        return user;
+    }
+}